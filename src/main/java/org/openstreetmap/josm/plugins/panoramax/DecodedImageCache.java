@@ -0,0 +1,115 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.openstreetmap.josm.tools.Logging;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * A least recently used cache of decoded images. Entries are weighted by the size of their pixel data, and the
+ * least recently used images are evicted when the total goes over the budget.
+ * <p>
+ * This is the only place decoded pixels are kept; the JCS cache only holds the encoded bytes. The prefetcher only
+ * fills the JCS cache, so it cannot evict the image on screen.
+ */
+final class DecodedImageCache {
+    private final Map<String, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongSupplier budget;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long size;
+
+    /**
+     * Create a new cache
+     * @param budget The maximum number of bytes of pixel data to keep. This is checked on every insertion.
+     */
+    DecodedImageCache(@Nonnull LongSupplier budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Get the first cached image for a set of keys
+     * @param keys The keys to look for, in order of preference
+     * @return The image, or {@code null} if none of the keys are cached
+     */
+    @Nullable
+    synchronized BufferedImage get(@Nonnull Iterable<String> keys) {
+        for (String key : keys) {
+            final BufferedImage image = this.images.get(key);
+            if (image != null) {
+                this.hits.incrementAndGet();
+                return image;
+            }
+        }
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Add an image to the cache
+     * @param key The key for the image
+     * @param image The decoded image
+     */
+    synchronized void put(@Nonnull String key, @Nonnull BufferedImage image) {
+        final long max = this.budget.getAsLong();
+        final long weight = weight(image);
+        if (weight > max) {
+            return;
+        }
+        final BufferedImage old = this.images.put(key, image);
+        if (old != null) {
+            this.size -= weight(old);
+        }
+        this.size += weight;
+        final Iterator<BufferedImage> iterator = this.images.values().iterator();
+        while (this.size > max && iterator.hasNext()) {
+            this.size -= weight(iterator.next());
+            iterator.remove();
+            Logging.debug("Panoramax: evicted decoded image ({0} hits, {1} misses, {2} bytes)", this.hits.get(),
+                    this.misses.get(), this.size);
+        }
+    }
+
+    /**
+     * Get the number of lookups that found an image
+     * @return The hit count
+     */
+    long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Get the number of lookups that did not find an image
+     * @return The miss count
+     */
+    long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Get the weight of an image
+     * @param image The image
+     * @return The approximate number of bytes used by the pixel data (width &times; height &times; bytes per pixel)
+     */
+    static long weight(@Nonnull BufferedImage image) {
+        final WritableRaster raster = image.getRaster();
+        final int bytesPerPixel = Math.max(1,
+                DataBuffer.getDataTypeSize(raster.getDataBuffer().getDataType()) / Byte.SIZE
+                        * raster.getNumDataElements());
+        return (long) image.getWidth() * image.getHeight() * bytesPerPixel;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+import org.openstreetmap.josm.tools.HttpClient;
+
+/**
+ * A transport using the JOSM {@link HttpClient}. Connections are only closed on errors, so that the JDK can keep
+ * them alive between requests.
+ */
+final class JosmHttpTransport implements PanoramaxTransport {
+    static final JosmHttpTransport INSTANCE = new JosmHttpTransport();
+
+    private JosmHttpTransport() {
+        // Hide constructor
+    }
+
+    @Override
+    public InputStream get(URI uri) throws IOException {
+        final HttpClient client = HttpClient.create(uri.toURL());
+        try {
+            final HttpClient.Response response = client.connect();
+            PanoramaxTransport.checkResponse(uri, response.getResponseCode());
+            return response.getContent();
+        } catch (IOException | RuntimeException e) {
+            client.disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public int head(URI uri) throws IOException {
+        final HttpClient client = HttpClient.create(uri.toURL(), "HEAD");
+        try {
+            return client.connect().getResponseCode();
+        } finally {
+            client.disconnect();
+        }
+    }
+}
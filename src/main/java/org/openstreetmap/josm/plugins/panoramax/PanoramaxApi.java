@@ -5,38 +5,65 @@
  */
 package org.openstreetmap.josm.plugins.panoramax;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.URI;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.imageio.ImageIO;
 
 import org.apache.commons.jcs3.access.CacheAccess;
-import org.openstreetmap.josm.data.cache.BufferedImageCacheEntry;
 import org.openstreetmap.josm.data.cache.JCSCacheManager;
 import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxCollection;
 import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxImage;
 import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxLink;
-import org.openstreetmap.josm.tools.HttpClient;
+import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.Logging;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import jakarta.json.Json;
-import jakarta.json.JsonObject;
-import jakarta.json.JsonReader;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParserFactory;
 
 public final class PanoramaxApi {
     private record PanoramaxCache(String api,
                                   CacheAccess<String, PanoramaxCollection> collections,
+                                  CacheAccess<String, String> pages,
                                   CacheAccess<String, PanoramaxImage> items,
-                                  CacheAccess<String, BufferedImageCacheEntry> images) {
+                                  CacheAccess<String, byte[]> images,
+                                  Map<String, PanoramaxSequence> sequences,
+                                  PanoramaxInterner interner) {
+        /** The maximum number of sequences to keep around; each sequence only holds a small window of pages */
+        private static final int MAX_SEQUENCES = 16;
+
         public PanoramaxCache(String api) {
-            this(api, JCSCacheManager.getCache("PanoramaxCollections"), JCSCacheManager.getCache("PanoramaxItems"), JCSCacheManager.getCache("PanoramaxImages"));
+            // Collections and pictures are kept on disk, so sequences seen in an earlier session are not fetched again
+            this(api, getDiskCache("PanoramaxCollections", MAX_MEMORY_COLLECTIONS, MAX_DISK_COLLECTIONS,
+                    getCacheDirectory()), getDiskCache("PanoramaxPages", MAX_MEMORY_PAGE_INDEX, MAX_DISK_PAGE_INDEX,
+                    getCacheDirectory()), getDiskCache("PanoramaxItems", MAX_MEMORY_ITEMS, MAX_DISK_ITEMS,
+                    getCacheDirectory()), JCSCacheManager.getCache("PanoramaxImages"),
+                    new LinkedHashMap<>(MAX_SEQUENCES, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<String, PanoramaxSequence> eldest) {
+                            return size() > MAX_SEQUENCES;
+                        }
+                    }, new PanoramaxInterner());
         }
     }
 
@@ -44,106 +71,295 @@ public final class PanoramaxApi {
     }
 
     /** The cache map is used to avoid (unlikely) id collisions if multiple servers are supported */
-    private static final Map<String, PanoramaxCache> cacheMap = new HashMap<>(1);
-    private static final Map<String, LastLiveCheck> liveCheck = new HashMap<>(1);
+    private static final Map<String, PanoramaxCache> cacheMap = new ConcurrentHashMap<>(1);
+    private static final Map<String, LastLiveCheck> liveCheck = new ConcurrentHashMap<>(1);
+    /** Fetches that are currently running, so that concurrent requests for the same resource share one fetch */
+    private static final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    /** Decoded images, so that flipping between pictures does not decode them again */
+    private static final DecodedImageCache DECODED_IMAGES = new DecodedImageCache(
+            PanoramaxPreferences::getDecodedImageCacheSize);
+    /** The number of collection pages to keep in memory; the rest of the cached pages are read from disk */
+    private static final int MAX_MEMORY_COLLECTIONS = 100;
+    /** The number of collection pages to keep on disk. A page of 100 pictures takes about 35 KB. */
+    private static final int MAX_DISK_COLLECTIONS = 1_000;
+    /** The number of pictures to remember the collection page of, about a full page per cached page */
+    private static final int MAX_MEMORY_PAGE_INDEX = 10_000;
+    private static final int MAX_DISK_PAGE_INDEX = 100_000;
+    private static final int MAX_MEMORY_ITEMS = 1_000;
+    private static final int MAX_DISK_ITEMS = 10_000;
+    /** Looking up the JSON provider is expensive, so only do it once */
+    private static final JsonParserFactory PARSER_FACTORY = Json.createParserFactory(null);
+    /** The transport to use instead of the one selected in the preferences, or {@code null} */
+    private static volatile PanoramaxTransport transport;
 
     private PanoramaxApi() {
     }
 
+    private static String getCacheDirectory() {
+        return new File(Config.getDirs().getCacheDirectory(true), "panoramax").getPath();
+    }
+
+    /**
+     * Get a cache that is kept on disk. Collections and pictures are written to disk in their compact encoding.
+     * @param name The cache name
+     * @param maxMemoryObjects The maximum number of entries in memory
+     * @param maxDiskObjects The maximum number of entries on disk
+     * @param path The cache directory
+     * @return The cache
+     */
+    static <V> CacheAccess<String, V> getDiskCache(String name, int maxMemoryObjects, int maxDiskObjects,
+            String path) {
+        return JCSCacheManager.getCache(name, maxMemoryObjects, maxDiskObjects, path);
+    }
+
+    /**
+     * Get a lazily loaded sequence
+     * @param api The api to use
+     * @param id The sequence (collection) id
+     * @return The sequence, or {@code null} if the api is not live
+     */
     @Nullable
-    public static PanoramaxCollection getCollection(@Nonnull String api, @Nonnull String id) {
+    public static PanoramaxSequence getSequence(@Nonnull String api, @Nonnull String id) {
         if (!isLive(api)) {
             return null;
         }
         final PanoramaxCache cache = cacheMap.computeIfAbsent(api, PanoramaxCache::new);
-        return cache.collections().get(id, () -> getRealCollection(api, id));
-    }
-
-    @Nonnull
-    private static PanoramaxCollection getRealCollection(@Nonnull String api, @Nonnull String id) {
-        final List<PanoramaxCollection> collections = new ArrayList<>(1);
-        PanoramaxLink next = new PanoramaxLink(buildUri(api, "collections", id, "items"), "", "", "");
-        do {
-            PanoramaxCollection current = PanoramaxDeserializer.parseCollection(getJson(next.href()));
-            collections.add(current);
-            next = getNext(current.getLinks());
-        } while (next != null);
-        if (collections.size() == 1) {
-            return collections.getFirst();
-        }
-        final List<PanoramaxLink> links = new ArrayList<>(4);
-        final List<PanoramaxImage> images = new ArrayList<>();
-        for (PanoramaxCollection collection : collections) {
-            for (PanoramaxLink link : collection.getLinks()) {
-                if (!links.contains(link)) {
-                    links.add(link);
-                }
-            }
-            images.addAll(collection);
+        synchronized (cache.sequences()) {
+            return cache.sequences().computeIfAbsent(id, sequenceId -> new PanoramaxSequence(api, sequenceId));
         }
-        return new PanoramaxCollection(links.toArray(PanoramaxLink[]::new), images.toArray(PanoramaxImage[]::new));
     }
 
+    /**
+     * Get the page of a sequence that contains a specific picture. Pages that were already loaded are used if they
+     * have the picture, so that selecting another picture in the same page does not load the page again.
+     * @param api The api to use
+     * @param collectionId The sequence (collection) id
+     * @param imageId The picture that must be in the page
+     * @return The page, or {@code null} if the api is not live
+     */
     @Nullable
-    private static PanoramaxLink getNext(@Nonnull PanoramaxLink... links) {
-        for (PanoramaxLink link : links) {
-            if ("next".equals(link.rel())) {
-                return link;
-            }
+    static PanoramaxCollection getCollectionPage(@Nonnull String api, @Nonnull String collectionId,
+            @Nonnull String imageId) {
+        if (!isLive(api)) {
+            return null;
         }
-        return null;
+        final PanoramaxCache cache = cacheMap.computeIfAbsent(api, PanoramaxCache::new);
+        final String loadedKey = cache.pages().get(getPageIndexKey(api, collectionId, imageId));
+        final PanoramaxCollection loaded = loadedKey == null ? null : cache.collections().get(loadedKey);
+        if (loaded != null && loaded.indexOf(imageId) >= 0) {
+            return loaded;
+        }
+        return getCollectionPage(api, collectionId, URI.create(buildUri(api, "collections", collectionId, "items")
+                + "?limit=" + PanoramaxPreferences.getSequencePageSize() + "&withPicture=" + imageId));
     }
 
+    /**
+     * Get a page of a sequence
+     * @param api The api to use
+     * @param collectionId The sequence (collection) id
+     * @param page The page to get (usually from a {@code next} or {@code prev} link)
+     * @return The page, or {@code null} if the api is not live
+     */
     @Nullable
-    public static PanoramaxImage getItem(@Nonnull String api, @Nonnull String collectionId, @Nonnull String imageId) {
+    static PanoramaxCollection getCollectionPage(@Nonnull String api, @Nonnull String collectionId,
+            @Nonnull URI page) {
         if (!isLive(api)) {
             return null;
         }
         final PanoramaxCache cache = cacheMap.computeIfAbsent(api, PanoramaxCache::new);
-        // For a more robust implementation, I _should_ try the /api/pictures/{id} endpoint.
-        return cache.items().get(imageId, () -> {
-            final PanoramaxCollection collection = getCollection(api, collectionId);
-            if (collection != null) {
-                return collection.stream().filter(p -> imageId.equals(p.id())).findFirst().orElse(null);
+        final String key = page.toString();
+        return singleFlight("collection " + api + ' ' + key, () -> cache.collections().get(key, () -> {
+            final PanoramaxCollection loaded = getJson(page,
+                    parser -> PanoramaxDeserializer.parseCollection(parser, cache.interner()));
+            for (int i = 0; i < loaded.size(); i++) {
+                cache.pages().put(getPageIndexKey(api, collectionId, loaded.getId(i)), key);
             }
+            return loaded;
+        }));
+    }
+
+    /**
+     * Get the key for the page index. The cache regions are shared by all servers, so the key includes the api.
+     */
+    private static String getPageIndexKey(String api, String collectionId, String imageId) {
+        return api + ' ' + collectionId + ' ' + imageId;
+    }
+
+    /**
+     * Get a single picture. This only fetches the picture itself; the rest of the sequence is only loaded when it is
+     * navigated through {@link #getSequence(String, String)}.
+     * @param api The api to use
+     * @param collectionId The sequence (collection) the picture is in
+     * @param imageId The picture id
+     * @return The picture, or {@code null} if the api is not live
+     */
+    @Nullable
+    public static PanoramaxImage getItem(@Nonnull String api, @Nonnull String collectionId, @Nonnull String imageId) {
+        if (!isLive(api)) {
             return null;
-        });
+        }
+        final PanoramaxCache cache = cacheMap.computeIfAbsent(api, PanoramaxCache::new);
+        return singleFlight("item " + api + ' ' + imageId, () -> cache.items().get(imageId,
+                () -> getJson(buildUri(api, "collections", collectionId, "items", imageId),
+                        parser -> PanoramaxDeserializer.parseImage(parser, cache.interner()))));
     }
 
     @Nullable
     public static BufferedImage getImage(@Nonnull String api, @Nonnull String collectionId, @Nonnull String imageId)
             throws IOException {
+        return getImage(api, collectionId, imageId, null);
+    }
+
+    /**
+     * Get a picture, using the smallest asset that fits the target size
+     * @param api The api to use
+     * @param collectionId The sequence (collection) the picture is in
+     * @param imageId The picture id
+     * @param target The target size, or {@code null} for the best available asset
+     * @return The image, or {@code null} if it could not be fetched
+     * @throws IOException if the image could not be decoded
+     */
+    @Nullable
+    public static BufferedImage getImage(@Nonnull String api, @Nonnull String collectionId, @Nonnull String imageId,
+            @Nullable Dimension target) throws IOException {
         if (!isLive(api)) {
             return null;
         }
+        final PanoramaxImage image = getItem(api, collectionId, imageId);
+        if (image == null) {
+            return null;
+        }
+        return getImage(api, image, target == null ? -1 : target.width, true);
+    }
+
+    /**
+     * Get a picture, using the smallest asset that fits the target width
+     * @param api The api to use
+     * @param image The picture
+     * @param width The target width, or a non-positive value for the best available asset
+     * @param fetch {@code true} to download the asset if it is not cached
+     * @return The image, or {@code null} if it is not cached and {@code fetch} is {@code false}, or if it could not
+     *         be fetched
+     * @throws IOException if the image could not be decoded
+     */
+    @Nullable
+    static BufferedImage getImage(@Nonnull String api, @Nonnull PanoramaxImage image, int width, boolean fetch)
+            throws IOException {
+        final PanoramaxLink link = image.getImageLink(width);
+        if (link == null) {
+            return null;
+        }
+        // Each asset is cached under its own url, so a later request for a larger asset does not get the smaller one
+        final String key = link.href().toString();
+        final List<String> keys = getAssetKeys(image, image.getAsset(width), key);
+        final BufferedImage decoded = DECODED_IMAGES.get(keys);
+        if (decoded != null) {
+            return decoded;
+        }
         final PanoramaxCache cache = cacheMap.computeIfAbsent(api, PanoramaxCache::new);
+        for (String assetKey : keys) {
+            final byte[] encoded = cache.images().get(assetKey);
+            if (encoded != null) {
+                return decode(assetKey, encoded);
+            }
+        }
+        if (!fetch || !isLive(api)) {
+            return null;
+        }
         try {
-            return cache.images().get(imageId, () -> {
-                final PanoramaxImage image = getItem(api, collectionId, imageId);
-                if (image == null) {
-                    return null;
-                }
-                final PanoramaxLink link = image.getBestImageLink();
-                if (link != null) {
-                    HttpClient client = null;
-                    try {
-                        client = HttpClient.create(link.href().toURL());
-                        final HttpClient.Response response = client.connect();
-                        return new BufferedImageCacheEntry(response.getContent().readAllBytes());
-                    } catch (IOException e) {
-                        isLive(api, true);
-                        Logging.error(e);
-                    } finally {
-                        if (client != null)
-                            client.disconnect();
-                    }
+            return singleFlight("image " + api + ' ' + key, () -> {
+                final byte[] encoded = getEncoded(api, cache, link);
+                try {
+                    return encoded == null ? null : decode(key, encoded);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-                return null;
-            }).getImage();
-        } catch (NullPointerException npe) {
-            Logging.trace(npe);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Download a picture without decoding it, so that it can be shown without waiting for the download. The decoded
+     * image cache is left alone, so prefetching cannot evict the image that is on screen.
+     * @param api The api to use
+     * @param image The picture
+     * @param width The target width, or a non-positive value for the best available asset
+     */
+    static void prefetchImage(@Nonnull String api, @Nonnull PanoramaxImage image, int width) {
+        final PanoramaxLink link = image.getImageLink(width);
+        if (link == null) {
+            return;
+        }
+        final PanoramaxCache cache = cacheMap.computeIfAbsent(api, PanoramaxCache::new);
+        for (String assetKey : getAssetKeys(image, image.getAsset(width), link.href().toString())) {
+            if (cache.images().get(assetKey) != null) {
+                return;
+            }
+        }
+        if (isLive(api)) {
+            getEncoded(api, cache, link);
         }
-        return null;
+    }
+
+    /**
+     * Get the encoded bytes of an asset, downloading it if it is not cached
+     * @param api The api to use
+     * @param cache The cache for the api
+     * @param link The asset
+     * @return The encoded bytes, or {@code null} if the asset could not be downloaded
+     */
+    @Nullable
+    private static byte[] getEncoded(String api, PanoramaxCache cache, PanoramaxLink link) {
+        final String key = link.href().toString();
+        return singleFlight("asset " + api + ' ' + key, () -> cache.images().get(key, () -> {
+            try (InputStream content = getTransport().get(link.href())) {
+                return content.readAllBytes();
+            } catch (IOException e) {
+                isLive(api, true);
+                Logging.error(e);
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Get the decoded image cache, e.g. for its hit and miss counts
+     * @return The decoded image cache
+     */
+    static DecodedImageCache getDecodedImageCache() {
+        return DECODED_IMAGES;
+    }
+
+    /**
+     * Get the cache keys for the assets that can be used for a request, in order of preference
+     * @param image The picture
+     * @param asset The requested asset
+     * @param key The key for the requested asset
+     * @return The key for the requested asset, followed by the keys for any larger assets
+     */
+    private static List<String> getAssetKeys(PanoramaxImage image, @Nullable PanoramaxImage.Asset asset, String key) {
+        if (asset == null) {
+            return Collections.singletonList(key);
+        }
+        final List<String> keys = new ArrayList<>(PanoramaxImage.Asset.values().length);
+        keys.add(key);
+        for (PanoramaxImage.Asset other : PanoramaxImage.Asset.values()) {
+            final PanoramaxLink link = image.assets().get(other.name());
+            if (other.maxwidth > asset.maxwidth && link != null) {
+                keys.add(link.href().toString());
+            }
+        }
+        return keys;
+    }
+
+    private static BufferedImage decode(String key, byte[] encoded) throws IOException {
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(encoded));
+        if (image != null) {
+            DECODED_IMAGES.put(key, image);
+        }
+        return image;
     }
 
     /**
@@ -173,37 +389,80 @@ public final class PanoramaxApi {
         } else if (check != null && Instant.now().isBefore(check.time().plusSeconds(30)) && !force) {
             return true;
         }
-        HttpClient client = null;
         try {
-            client = HttpClient.create(buildUri(api, "live").toURL(), "HEAD");
-            boolean live = client.connect().getResponseCode() == 200;
+            boolean live = getTransport().head(buildUri(api, "live")) == 200;
             liveCheck.put(api,
                     new LastLiveCheck(api, Instant.now(), live, live || check == null ? 0 : check.retryCount() + 1));
             return live;
         } catch (IOException e) {
             Logging.trace(e);
-        } finally {
-            if (client != null)
-                client.disconnect();
         }
         liveCheck.put(api, new LastLiveCheck(api, Instant.now(), false, check == null ? 1 : check.retryCount() + 1));
         return false;
     }
 
-    private static JsonObject getJson(URI uri) {
-        HttpClient client = null;
+    /**
+     * Run a fetch, or wait for the same fetch if another thread is already running it
+     * @param key The key for the fetch. This should include the api and the type of resource.
+     * @param fetch The fetch to run
+     * @return The result of the fetch
+     * @param <T> The result type
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T singleFlight(String key, Supplier<T> fetch) {
+        final CompletableFuture<Object> flight = new CompletableFuture<>();
+        final CompletableFuture<Object> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            try {
+                return (T) running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                } else if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            }
+        }
         try {
-            client = HttpClient.create(uri.toURL());
-            final HttpClient.Response response = client.connect();
-            try (JsonReader reader = Json.createReader(response.getContentReader())) {
-                return reader.readObject();
+            final T result = fetch.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
 
-            }
+    /**
+     * Get the number of fetches that are currently running
+     * @return The number of running fetches
+     */
+    static int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Use a specific transport instead of the one selected in the preferences. This is for tests.
+     * @param newTransport The transport to use, or {@code null} to use the preferences again
+     */
+    static void setTransport(@Nullable PanoramaxTransport newTransport) {
+        transport = newTransport;
+    }
+
+    private static PanoramaxTransport getTransport() {
+        final PanoramaxTransport current = transport;
+        return current == null ? PanoramaxTransport.get() : current;
+    }
+
+    private static <T> T getJson(URI uri, Function<JsonParser, T> reader) {
+        // The parser detects the encoding, and closing it closes the response
+        try (JsonParser parser = PARSER_FACTORY.createParser(getTransport().get(uri))) {
+            return reader.apply(parser);
         } catch (IOException e) {
             throw new UncheckedIOException(e); // I should handle network issues better.
-        } finally {
-            if (client != null)
-                client.disconnect();
         }
     }
 
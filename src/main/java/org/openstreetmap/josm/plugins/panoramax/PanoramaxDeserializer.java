@@ -6,162 +6,328 @@
 package org.openstreetmap.josm.plugins.panoramax;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.RecordComponent;
 import java.net.URI;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxCollection;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxExif;
 import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxImage;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxLazyExif;
 import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxLink;
-import org.openstreetmap.josm.tools.JosmRuntimeException;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxProperties;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxProvider;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxTimestamps;
 
-import jakarta.json.JsonArray;
-import jakarta.json.JsonNumber;
-import jakarta.json.JsonObject;
-import jakarta.json.JsonString;
-import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
 
 /**
- * Take a JSON object and deserialize it
+ * Take a JSON stream and deserialize it. Values are bound directly from the parser events, so no intermediate JSON
+ * object model is built, and unknown keys are skipped without being materialized.
  */
 final class PanoramaxDeserializer {
-    static PanoramaxCollection parseCollection(JsonObject json) {
-        try {
-            final PanoramaxImage[] features = parse(PanoramaxImage[].class, json.getJsonArray("features"));
-            final PanoramaxLink[] links = parse(PanoramaxLink[].class, json.getJsonArray("links"));
-            return new PanoramaxCollection(links, features);
-        } catch (ReflectiveOperationException e) {
-            throw new JosmRuntimeException(e);
+    private static final RecordBinder<PanoramaxImage> IMAGE_BINDER = RecordBinder.of(PanoramaxImage.class);
+    private static final RecordBinder<PanoramaxLink> LINK_BINDER = RecordBinder.of(PanoramaxLink.class);
+    private static final RecordBinder<PanoramaxProperties> PROPERTIES_BINDER = RecordBinder
+            .of(PanoramaxProperties.class);
+    private static final RecordBinder<PanoramaxExif> EXIF_BINDER = RecordBinder.of(PanoramaxExif.class);
+    private static final int IMAGE_LAT = IMAGE_BINDER.componentSlot("lat");
+    private static final int IMAGE_LON = IMAGE_BINDER.componentSlot("lon");
+    private static final int IMAGE_ASSETS = IMAGE_BINDER.componentSlot("assets");
+    private static final int IMAGE_ID = IMAGE_BINDER.componentSlot("id");
+    private static final int IMAGE_TYPE = IMAGE_BINDER.componentSlot("type");
+    private static final int IMAGE_LINKS = IMAGE_BINDER.componentSlot("links");
+    private static final int IMAGE_COLLECTION = IMAGE_BINDER.componentSlot("collection");
+    private static final int IMAGE_STAC_VERSION = IMAGE_BINDER.componentSlot("stac_version");
+    private static final int IMAGE_STAC_EXTENSIONS = IMAGE_BINDER.componentSlot("stac_extensions");
+    private static final int PROPERTIES_EXIF = PROPERTIES_BINDER.componentSlot("exif");
+    private static final int PROPERTIES_DATETIME = PROPERTIES_BINDER.componentSlot("datetime");
+    private static final int PROPERTIES_DATETIMEZ = PROPERTIES_BINDER.componentSlot("datetimez");
+    private static final int PROPERTIES_TIMESTAMPS = PROPERTIES_BINDER.componentSlot("timestamps");
+    private static final int PROPERTIES_LICENSE = PROPERTIES_BINDER.componentSlot("license");
+    private static final int LINK_REL = LINK_BINDER.componentSlot("rel");
+    private static final int LINK_TYPE = LINK_BINDER.componentSlot("type");
+    private static final int EXIF_DATE_TIME = EXIF_BINDER.componentSlot("ExifImageDateTime");
+    private static final int EXIF_GPS_DATE = EXIF_BINDER.componentSlot("ExifGPSInfoGPSDateStamp");
+    private static final int EXIF_GPS_TIME = EXIF_BINDER.componentSlot("ExifGPSInfoGPSTimeStamp");
+
+    private PanoramaxDeserializer() {
+        // Hide constructor
+    }
+
+    /**
+     * Parse a collection (a page of pictures)
+     * @param parser The parser, positioned before the collection object
+     * @param interner The interner for repeated values
+     * @return The parsed collection
+     */
+    static PanoramaxCollection parseCollection(JsonParser parser, PanoramaxInterner interner) {
+        final List<PanoramaxImage> features = new ArrayList<>();
+        final PanoramaxLink[] links = parseCollection(parser, interner, features::add);
+        return new PanoramaxCollection(links, features.toArray(PanoramaxImage[]::new));
+    }
+
+    /**
+     * Parse a collection (a page of pictures), emitting the pictures as they are parsed
+     * @param parser The parser, positioned before the collection object
+     * @param interner The interner for repeated values
+     * @param features The consumer for the pictures
+     * @return The links for the collection
+     */
+    static PanoramaxLink[] parseCollection(JsonParser parser, PanoramaxInterner interner,
+            Consumer<PanoramaxImage> features) {
+        expect(parser.next(), JsonParser.Event.START_OBJECT);
+        PanoramaxLink[] links = new PanoramaxLink[0];
+        JsonParser.Event event;
+        while ((event = parser.next()) != JsonParser.Event.END_OBJECT) {
+            final String key = parser.getString();
+            event = parser.next();
+            if ("features".equals(key) && event == JsonParser.Event.START_ARRAY) {
+                while ((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+                    expect(event, JsonParser.Event.START_OBJECT);
+                    features.accept(readImage(parser, interner));
+                }
+            } else if ("links".equals(key) && event == JsonParser.Event.START_ARRAY) {
+                links = readArray(PanoramaxLink[].class, parser, interner);
+            } else {
+                skip(parser, event);
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Parse a single picture
+     * @param parser The parser, positioned before the picture object
+     * @param interner The interner for repeated values
+     * @return The parsed picture
+     */
+    static PanoramaxImage parseImage(JsonParser parser, PanoramaxInterner interner) {
+        expect(parser.next(), JsonParser.Event.START_OBJECT);
+        return readImage(parser, interner);
+    }
+
+    private static PanoramaxImage readImage(JsonParser parser, PanoramaxInterner interner) {
+        final Object[] args = new Object[IMAGE_BINDER.size()];
+        JsonParser.Event event;
+        while ((event = parser.next()) != JsonParser.Event.END_OBJECT) {
+            final String key = parser.getString();
+            event = parser.next();
+            if ("geometry".equals(key) && event == JsonParser.Event.START_OBJECT) {
+                readCoordinates(parser, args);
+            } else if ("assets".equals(key) && event == JsonParser.Event.START_OBJECT) {
+                final Map<String, PanoramaxLink> assets = new HashMap<>(4);
+                while (parser.next() != JsonParser.Event.END_OBJECT) {
+                    final String asset = parser.getString();
+                    expect(parser.next(), JsonParser.Event.START_OBJECT);
+                    assets.put(asset, readObject(LINK_BINDER, parser, interner));
+                }
+                args[IMAGE_ASSETS] = assets;
+            } else {
+                bind(IMAGE_BINDER, args, key, event, parser, interner);
+            }
         }
+        internLinks(args, interner);
+        return IMAGE_BINDER.newInstance(args);
     }
 
-    static PanoramaxImage parseImage(JsonObject image) {
-        try {
-            final RecordComponent[] components = PanoramaxImage.class.getRecordComponents();
-            final Object[] args = getJsonArgs(components, image);
-            final JsonArray coordinates = image.getJsonObject("geometry").getJsonArray("coordinates");
-            final double lon = coordinates.getJsonNumber(0).doubleValue();
-            final double lat = coordinates.getJsonNumber(1).doubleValue();
-            final JsonObject assetsObject = image.getJsonObject("assets");
-            final Map<String, PanoramaxLink> assets = assetsObject.entrySet().stream()
-                    .collect(Collectors.toMap(Map.Entry::getKey, entry -> {
-                        try {
-                            return parse(PanoramaxLink.class, entry.getValue());
-                        } catch (ReflectiveOperationException e) {
-                            throw new JosmRuntimeException(e);
-                        }
-                    }));
-            for (int i = 0; i < components.length; i++) {
-                switch (components[i].getName()) {
-                case "lat":
-                    args[i] = lat;
-                    break;
-                case "lon":
-                    args[i] = lon;
-                    break;
-                case "assets":
-                    args[i] = assets;
-                default: // Do nothing
+    /**
+     * Intern the links that do not point at the picture itself, such as the root, parent, and collection links.
+     * This is done after the picture is read, since the id may come after the links.
+     */
+    private static void internLinks(Object[] args, PanoramaxInterner interner) {
+        if (args[IMAGE_LINKS] instanceof PanoramaxLink[] links) {
+            final String id = (String) args[IMAGE_ID];
+            for (int i = 0; i < links.length; i++) {
+                if (links[i] != null && (id == null || !links[i].href().toString().contains(id))) {
+                    links[i] = interner.intern(links[i]);
                 }
             }
-            return PanoramaxImage.class
-                    .getConstructor(Arrays.stream(components).map(RecordComponent::getType).toArray(Class<?>[]::new))
-                    .newInstance(args);
-        } catch (ReflectiveOperationException e) {
-            throw new JosmRuntimeException(e);
         }
     }
 
-    private static <T> T parseObject(Class<T> clazz, JsonObject object)
-            throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
-        if (!clazz.isRecord()) {
-            throw new IllegalArgumentException("Specified class must be a record: " + clazz.getCanonicalName());
-        } else if (PanoramaxImage.class.equals(clazz)) {
-            return clazz.cast(parseImage(object));
+    private static void readCoordinates(JsonParser parser, Object[] args) {
+        JsonParser.Event event;
+        while ((event = parser.next()) != JsonParser.Event.END_OBJECT) {
+            final String key = parser.getString();
+            event = parser.next();
+            if ("coordinates".equals(key) && event == JsonParser.Event.START_ARRAY) {
+                expect(parser.next(), JsonParser.Event.VALUE_NUMBER);
+                args[IMAGE_LON] = Double.parseDouble(parser.getString());
+                expect(parser.next(), JsonParser.Event.VALUE_NUMBER);
+                args[IMAGE_LAT] = Double.parseDouble(parser.getString());
+                parser.skipArray();
+            } else {
+                skip(parser, event);
+            }
         }
-        final RecordComponent[] components = clazz.getRecordComponents();
-        final Object[] args = getJsonArgs(components, object);
-        try {
-            return clazz
-                    .getConstructor(Arrays.stream(components).map(RecordComponent::getType).toArray(Class<?>[]::new))
-                    .newInstance(args);
-        } catch (Exception e) {
-            throw new JosmRuntimeException(clazz.getCanonicalName() + " " + object.toString(), e);
+    }
+
+    /**
+     * Read the properties of a picture. The times are parsed here, so that they do not need to be parsed each time
+     * they are used.
+     */
+    private static PanoramaxProperties readProperties(JsonParser parser, PanoramaxInterner interner) {
+        final Object[] args = new Object[PROPERTIES_BINDER.size()];
+        String[] exif = null;
+        JsonParser.Event event;
+        while ((event = parser.next()) != JsonParser.Event.END_OBJECT) {
+            final String key = parser.getString();
+            event = parser.next();
+            if ("exif".equals(key) && event == JsonParser.Event.START_OBJECT) {
+                exif = readExif(parser);
+                args[PROPERTIES_EXIF] = PanoramaxLazyExif.of(exif);
+            } else {
+                bind(PROPERTIES_BINDER, args, key, event, parser, interner);
+            }
         }
+        args[PROPERTIES_TIMESTAMPS] = PanoramaxTimestamps.parse(exif == null ? null : exif[EXIF_DATE_TIME],
+                exif == null ? null : exif[EXIF_GPS_DATE], exif == null ? null : exif[EXIF_GPS_TIME],
+                (String) args[PROPERTIES_DATETIME], (String) args[PROPERTIES_DATETIMEZ]);
+        return PROPERTIES_BINDER.newInstance(args);
     }
 
-    private static Object[] getJsonArgs(RecordComponent[] components, JsonObject object)
-            throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
-        Object[] args = new Object[components.length];
-        final Map<String, String> normalizedKeys = object.keySet().stream()
-                .collect(Collectors.toMap(k -> k.replace(".", ""), k -> k));
-        for (int i = 0; i < components.length; i++) {
-            final RecordComponent component = components[i];
-            if (normalizedKeys.containsKey(component.getName())) {
-                args[i] = parse(component.getType(), object.get(normalizedKeys.get(component.getName())));
+    /**
+     * Read EXIF metadata. The values are kept as text, and the record is only built when it is used.
+     */
+    private static String[] readExif(JsonParser parser) {
+        final String[] values = new String[PanoramaxExif.FIELD_COUNT];
+        JsonParser.Event event;
+        while ((event = parser.next()) != JsonParser.Event.END_OBJECT) {
+            final int slot = EXIF_BINDER.slot(parser.getString());
+            event = parser.next();
+            if (slot >= 0 && (event == JsonParser.Event.VALUE_STRING || event == JsonParser.Event.VALUE_NUMBER)) {
+                values[slot] = parser.getString();
+            } else {
+                skip(parser, event);
             }
         }
-        return args;
+        return values;
     }
 
-    private static <T> T[] parseArray(Class<T> clazz, JsonArray array)
-            throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
-        Objects.requireNonNull(clazz);
-        Objects.requireNonNull(array);
-        T[] rType = (T[]) Array.newInstance(clazz, array.size());
-        for (int i = 0; i < array.size(); i++) {
-            rType[i] = parse(clazz, array.get(i));
+    private static <T> T readObject(RecordBinder<T> binder, JsonParser parser, PanoramaxInterner interner) {
+        final Object[] args = new Object[binder.size()];
+        JsonParser.Event event;
+        while ((event = parser.next()) != JsonParser.Event.END_OBJECT) {
+            final String key = parser.getString();
+            event = parser.next();
+            bind(binder, args, key, event, parser, interner);
         }
-        return rType;
-    }
-
-    private static <T> T parse(Class<T> clazz, JsonValue value)
-            throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
-        Objects.requireNonNull(clazz);
-        Objects.requireNonNull(value);
-        return switch (value.getValueType()) {
-            case ARRAY -> clazz.cast(parseArray(clazz.getComponentType(), value.asJsonArray()));
-            case OBJECT -> {
-                if (clazz.isRecord()) {
-                    yield parseObject(clazz, value.asJsonObject());
-                } else {
-                    yield null; // This must be manually handled
-                }
+        return binder.newInstance(args);
+    }
+
+    private static void bind(RecordBinder<?> binder, Object[] args, String key, JsonParser.Event event,
+            JsonParser parser, PanoramaxInterner interner) {
+        final int slot = binder.slot(key);
+        if (slot >= 0) {
+            final Object value = read(binder.type(slot), parser, event, interner);
+            if (value instanceof String[] strings && isRepeated(binder, slot)) {
+                args[slot] = interner.intern(strings);
+            } else {
+                args[slot] = isRepeated(binder, slot) ? interner.intern(value) : value;
             }
-            case STRING -> {
-                final String str = ((JsonString) value).getString();
-                if (URI.class.equals(clazz)) {
-                    yield clazz.cast(URI.create(str));
+        } else {
+            skip(parser, event);
+        }
+    }
+
+    /**
+     * Check if a value is usually the same for every picture in a page. Only these values are interned; interning
+     * ids, hrefs, and dates would only grow the interner. Whole links are handled by {@link #internLinks}.
+     */
+    private static boolean isRepeated(RecordBinder<?> binder, int slot) {
+        if (binder == IMAGE_BINDER) {
+            return slot == IMAGE_TYPE || slot == IMAGE_COLLECTION || slot == IMAGE_STAC_VERSION
+                    || slot == IMAGE_STAC_EXTENSIONS;
+        } else if (binder == LINK_BINDER) {
+            return slot == LINK_REL || slot == LINK_TYPE;
+        }
+        return binder == PROPERTIES_BINDER && slot == PROPERTIES_LICENSE;
+    }
+
+    private static <T> T readArray(Class<T> clazz, JsonParser parser, PanoramaxInterner interner) {
+        if (!clazz.isArray()) {
+            parser.skipArray();
+            return null;
+        }
+        final Class<?> componentType = clazz.getComponentType();
+        final List<Object> values = new ArrayList<>();
+        JsonParser.Event event;
+        while ((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+            values.add(read(componentType, parser, event, interner));
+        }
+        final Object array = Array.newInstance(componentType, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            Array.set(array, i, values.get(i));
+        }
+        return clazz.cast(array);
+    }
+
+    private static Object read(Class<?> clazz, JsonParser parser, JsonParser.Event event,
+            PanoramaxInterner interner) {
+        return switch (event) {
+            case START_ARRAY -> readArray(clazz, parser, interner);
+            case START_OBJECT -> {
+                if (PanoramaxImage.class.equals(clazz)) {
+                    yield readImage(parser, interner);
+                } else if (PanoramaxProperties.class.equals(clazz)) {
+                    yield readProperties(parser, interner);
+                } else if (PanoramaxProvider.class.equals(clazz)) {
+                    // Providers are repeated for every picture in a page
+                    yield interner.intern(readObject(RecordBinder.of(clazz), parser, interner));
+                } else if (clazz.isRecord()) {
+                    yield readObject(RecordBinder.of(clazz), parser, interner);
                 }
-                yield clazz.cast(str);
+                parser.skipObject();
+                yield null; // This must be manually handled
             }
-            case NUMBER -> {
-                JsonNumber number = (JsonNumber) value;
-                if (int.class.equals(clazz) || Integer.class.equals(clazz)) {
-                    yield (T) Integer.valueOf(number.intValueExact());
-                } else if (long.class.equals(clazz) || Long.class.equals(clazz)) {
-                    yield (T) Long.valueOf(number.longValueExact());
-                } else if (short.class.equals(clazz) || Short.class.equals(clazz)) {
-                    yield (T) Short.valueOf((short) number.intValueExact());
-                } else if (byte.class.equals(clazz) || Byte.class.equals(clazz)) {
-                    yield (T) Byte.valueOf((byte) number.intValueExact());
-                } else if (double.class.equals(clazz) || Double.class.equals(clazz)) {
-                    yield (T) Double.valueOf(number.doubleValue());
-                } else if (float.class.equals(clazz) || Float.class.equals(clazz)) {
-                    yield (T) Float.valueOf((float) number.doubleValue());
-                } else if (String.class.equals(clazz)) {
-                    yield (T) number.toString(); // Exif properites seems to go between int and string for some values.
-                } else {
-                    throw new IllegalArgumentException("Unknown class type: " + clazz.getCanonicalName());
+            case VALUE_STRING -> {
+                if (URI.class.equals(clazz)) {
+                    yield URI.create(parser.getString());
                 }
+                yield clazz.cast(parser.getString());
             }
-            case TRUE -> clazz.cast(Boolean.TRUE);
-            case FALSE -> clazz.cast(Boolean.FALSE);
-            case NULL -> null;
+            case VALUE_NUMBER -> readNumber(clazz, parser);
+            case VALUE_TRUE -> clazz.cast(Boolean.TRUE);
+            case VALUE_FALSE -> clazz.cast(Boolean.FALSE);
+            case VALUE_NULL -> null;
+            default -> throw new IllegalStateException("Unexpected JSON event: " + event);
         };
     }
+
+    private static Object readNumber(Class<?> clazz, JsonParser parser) {
+        if (int.class.equals(clazz) || Integer.class.equals(clazz)) {
+            return parser.isIntegralNumber() ? parser.getInt() : parser.getBigDecimal().intValueExact();
+        } else if (long.class.equals(clazz) || Long.class.equals(clazz)) {
+            return parser.isIntegralNumber() ? parser.getLong() : parser.getBigDecimal().longValueExact();
+        } else if (short.class.equals(clazz) || Short.class.equals(clazz)) {
+            return parser.getBigDecimal().shortValueExact();
+        } else if (byte.class.equals(clazz) || Byte.class.equals(clazz)) {
+            return parser.getBigDecimal().byteValueExact();
+        } else if (double.class.equals(clazz) || Double.class.equals(clazz)) {
+            return Double.parseDouble(parser.getString());
+        } else if (float.class.equals(clazz) || Float.class.equals(clazz)) {
+            return Float.parseFloat(parser.getString());
+        } else if (String.class.equals(clazz)) {
+            return parser.getString(); // Exif properites seems to go between int and string for some values.
+        }
+        throw new IllegalArgumentException("Unknown class type: " + clazz.getCanonicalName());
+    }
+
+    private static void skip(JsonParser parser, JsonParser.Event event) {
+        if (event == JsonParser.Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (event == JsonParser.Event.START_ARRAY) {
+            parser.skipArray();
+        }
+    }
+
+    private static void expect(JsonParser.Event actual, JsonParser.Event expected) {
+        if (actual != expected) {
+            throw new IllegalStateException("Expected " + expected + " but got " + actual);
+        }
+    }
 }
@@ -0,0 +1,143 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.util.Arrays;
+
+import org.openstreetmap.josm.data.vector.VectorNode;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * A screen space index of the markers drawn in a frame, for hit testing on mouse moves. Each cell holds a linked
+ * list of the markers in it, so a lookup only needs to look at the cells around the mouse.
+ * <p>
+ * This is filled by the thread drawing the frame, and read on the EDT once the frame is done. The arrays are reused
+ * between frames.
+ */
+final class PanoramaxHitGrid {
+    private static final int CELL_SIZE = 32;
+
+    private int columns;
+    private int rows;
+    /** The first marker in each cell, or -1 */
+    private int[] heads = new int[0];
+    /** The next marker in the same cell, or -1 */
+    private int[] next = new int[64];
+    private int[] x = new int[64];
+    private int[] y = new int[64];
+    private double[] heading = new double[64];
+    private VectorNode[] nodes = new VectorNode[64];
+    private int size;
+
+    /**
+     * Clear the grid for a new frame
+     * @param width The screen width
+     * @param height The screen height
+     */
+    void reset(int width, int height) {
+        this.columns = width / CELL_SIZE + 1;
+        this.rows = height / CELL_SIZE + 1;
+        final int cells = this.columns * this.rows;
+        if (this.heads.length < cells) {
+            this.heads = new int[cells];
+        }
+        Arrays.fill(this.heads, 0, cells, -1);
+        // Don't keep nodes from unloaded tiles alive
+        Arrays.fill(this.nodes, 0, this.size, null);
+        this.size = 0;
+    }
+
+    /**
+     * Add a marker
+     * @param markerX The screen x
+     * @param markerY The screen y
+     * @param markerHeading The heading
+     * @param node The picture node
+     */
+    void add(int markerX, int markerY, double markerHeading, VectorNode node) {
+        final int cell = cell(Math.floorDiv(markerX, CELL_SIZE), Math.floorDiv(markerY, CELL_SIZE));
+        if (cell < 0) {
+            return;
+        }
+        if (this.size == this.next.length) {
+            final int length = 2 * this.size;
+            this.next = Arrays.copyOf(this.next, length);
+            this.x = Arrays.copyOf(this.x, length);
+            this.y = Arrays.copyOf(this.y, length);
+            this.heading = Arrays.copyOf(this.heading, length);
+            this.nodes = Arrays.copyOf(this.nodes, length);
+        }
+        this.x[this.size] = markerX;
+        this.y[this.size] = markerY;
+        this.heading[this.size] = markerHeading;
+        this.nodes[this.size] = node;
+        this.next[this.size] = this.heads[cell];
+        this.heads[cell] = this.size;
+        this.size++;
+    }
+
+    /**
+     * Find the closest marker to a screen position
+     * @param screenX The screen x
+     * @param screenY The screen y
+     * @param radius The maximum distance in pixels
+     * @return The index of the closest marker, or -1 if there is no marker within {@code radius}
+     */
+    int find(int screenX, int screenY, int radius) {
+        int best = -1;
+        long bestDistance = (long) radius * radius;
+        for (int row = Math.floorDiv(screenY - radius, CELL_SIZE); row <= Math.floorDiv(screenY + radius,
+                CELL_SIZE); row++) {
+            for (int column = Math.floorDiv(screenX - radius, CELL_SIZE); column <= Math.floorDiv(screenX + radius,
+                    CELL_SIZE); column++) {
+                final int cell = cell(column, row);
+                if (cell < 0) {
+                    continue;
+                }
+                for (int i = this.heads[cell]; i >= 0; i = this.next[i]) {
+                    final long dx = this.x[i] - (long) screenX;
+                    final long dy = this.y[i] - (long) screenY;
+                    final long distance = dx * dx + dy * dy;
+                    if (distance <= bestDistance) {
+                        best = i;
+                        bestDistance = distance;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Get the number of markers
+     * @return The number of markers in the frame
+     */
+    int size() {
+        return this.size;
+    }
+
+    int getX(int marker) {
+        return this.x[marker];
+    }
+
+    int getY(int marker) {
+        return this.y[marker];
+    }
+
+    double getHeading(int marker) {
+        return this.heading[marker];
+    }
+
+    @Nullable
+    VectorNode getNode(int marker) {
+        return this.nodes[marker];
+    }
+
+    private int cell(int column, int row) {
+        return column < 0 || row < 0 || column >= this.columns || row >= this.rows ? -1 : row * this.columns + column;
+    }
+}
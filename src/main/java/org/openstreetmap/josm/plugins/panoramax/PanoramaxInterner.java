@@ -0,0 +1,90 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * Canonicalize values that are repeated across pictures, such as licenses, providers, links, and STAC versions and
+ * extensions. Only weak references are kept, so values that are no longer used by any picture can be collected.
+ */
+final class PanoramaxInterner {
+    private final Map<Object, WeakReference<Object>> canonical = new WeakHashMap<>();
+    /**
+     * Arrays do not have value-based {@code equals}, so they are keyed by their contents. The keys are strongly held
+     * copies, and are removed once their array has been collected.
+     */
+    private final Map<List<String>, WeakReference<String[]>> arrays = new HashMap<>();
+
+    /**
+     * Get the canonical instance of a value
+     * @param value The value. It must have value-based {@code equals} and {@code hashCode} methods.
+     * @param <T> The type of the value
+     * @return The canonical instance, which is {@code value} if there was no equal value
+     */
+    @Nullable
+    <T> T intern(@Nullable T value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (this.canonical) {
+            final WeakReference<Object> reference = this.canonical.get(value);
+            final Object existing = reference == null ? null : reference.get();
+            if (existing != null && existing.getClass() == value.getClass()) {
+                @SuppressWarnings("unchecked")
+                final T canonicalValue = (T) existing;
+                return canonicalValue;
+            }
+            this.canonical.put(value, new WeakReference<>(value));
+            return value;
+        }
+    }
+
+    /**
+     * Get the canonical instance of an array of strings. The strings are interned as well.
+     * @param values The values
+     * @return The canonical array, which is {@code values} if there was no equal array
+     */
+    @Nullable
+    String[] intern(@Nullable String[] values) {
+        if (values == null) {
+            return null;
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = intern(values[i]);
+        }
+        final List<String> key = Arrays.asList(values.clone());
+        synchronized (this.arrays) {
+            final WeakReference<String[]> reference = this.arrays.get(key);
+            final String[] existing = reference == null ? null : reference.get();
+            if (existing != null) {
+                return existing;
+            }
+            this.arrays.values().removeIf(array -> array.get() == null);
+            this.arrays.put(key, new WeakReference<>(values));
+            return values;
+        }
+    }
+
+    /**
+     * Get the number of canonical values
+     * @return The number of values that have not been collected yet
+     */
+    int size() {
+        synchronized (this.canonical) {
+            synchronized (this.arrays) {
+                return this.canonical.size() + this.arrays.size();
+            }
+        }
+    }
+}
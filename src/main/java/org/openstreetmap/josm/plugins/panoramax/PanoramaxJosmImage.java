@@ -11,27 +11,45 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
-import java.time.temporal.ChronoField;
-import java.time.temporal.TemporalAccessor;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.openstreetmap.josm.data.coor.ILatLon;
 import org.openstreetmap.josm.data.imagery.street_level.IImageEntry;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.layer.geoimage.ImageViewerDialog;
-import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxCollection;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxExif;
 import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxImage;
 import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxLink;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxTimestamps;
 import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
 import org.openstreetmap.josm.tools.date.DateUtils;
 
 public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
+    private static final PanoramaxTimestamps EMPTY_TIMESTAMPS = new PanoramaxTimestamps(PanoramaxTimestamps.NONE,
+            PanoramaxTimestamps.NONE, PanoramaxTimestamps.NONE, PanoramaxTimestamps.NONE);
+    /** Downloads the full picture after the thumbnail has been shown. Only one picture is shown at a time. */
+    private static final ThreadPoolExecutor UPGRADES = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), Utils.newThreadFactory("panoramax-upgrade-%d", Thread.NORM_PRIORITY));
+    /** The latest upgrade, or {@code null}. Guarded by {@link #UPGRADES}. */
+    private static Future<?> upgrade;
+    /** Incremented for each upgrade, so that stale upgrades that are already running do not notify. */
+    private static long upgradeGeneration;
+
+    static {
+        UPGRADES.allowCoreThreadTimeOut(true);
+    }
+
     private final PanoramaxImage image;
 
     public PanoramaxJosmImage(PanoramaxImage image) {
@@ -40,25 +58,93 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
 
     @Override
     public BufferedImage read(Dimension target) throws IOException {
-        return PanoramaxApi.getImage(getRootApi(), this.image.collection(), this.image.id());
+        final String api = getRootApi();
+        final int width = target == null ? -1 : target.width;
+        cancelUpgrade();
+        PanoramaxPrefetcher.getInstance().moveTo(api, this.image, width);
+        if (PanoramaxPreferences.isProgressiveLoading()) {
+            final BufferedImage cached = PanoramaxApi.getImage(api, this.image, width, false);
+            if (cached != null) {
+                return cached;
+            }
+            final PanoramaxImage.Asset asset = this.image.getAsset(width);
+            if (asset != null && asset != PanoramaxImage.Asset.thumb
+                    && this.image.assets().containsKey(PanoramaxImage.Asset.thumb.name())) {
+                final BufferedImage thumb = PanoramaxApi.getImage(api, this.image, PanoramaxImage.Asset.thumb.maxwidth,
+                        true);
+                if (thumb != null) {
+                    upgrade(api, this.image, width, upgraded -> GuiHelper.runInEDT(() -> fireImageChanged(upgraded)));
+                    return thumb;
+                }
+            }
+        }
+        return PanoramaxApi.getImage(api, this.image, width, true);
+    }
+
+    /**
+     * Download the full picture in the background. Any earlier upgrade is cancelled, since its picture is no longer
+     * shown.
+     * @param api The api to use
+     * @param image The picture
+     * @param width The target width, or a non-positive value for the best available asset
+     * @param listener Called with a new instance of the picture once the full picture is available
+     * @return The upgrade
+     */
+    static Future<?> upgrade(String api, PanoramaxImage image, int width, Consumer<PanoramaxJosmImage> listener) {
+        synchronized (UPGRADES) {
+            cancelUpgrade();
+            final long generation = upgradeGeneration;
+            upgrade = UPGRADES.submit(() -> {
+                try {
+                    if (PanoramaxApi.getImage(api, image, width, true) != null && isCurrentUpgrade(generation)) {
+                        listener.accept(new PanoramaxJosmImage(image));
+                    }
+                } catch (IOException e) {
+                    Logging.trace(e);
+                }
+            });
+            return upgrade;
+        }
+    }
+
+    /**
+     * Cancel the current upgrade. Upgrades that are already downloading finish, so that other callers waiting on the
+     * same download are not interrupted, but they do not notify.
+     */
+    private static void cancelUpgrade() {
+        synchronized (UPGRADES) {
+            upgradeGeneration++;
+            if (upgrade != null) {
+                upgrade.cancel(false);
+                upgrade = null;
+                UPGRADES.purge();
+            }
+        }
+    }
+
+    private static boolean isCurrentUpgrade(long generation) {
+        synchronized (UPGRADES) {
+            return upgradeGeneration == generation;
+        }
+    }
+
+    /**
+     * Tell the viewer (and anything else listening to the layers) that a better version of this image is available
+     * @param upgraded A new instance of this image. The viewer does not reload the image if it is the same instance.
+     */
+    private void fireImageChanged(PanoramaxJosmImage upgraded) {
+        for (PanoramaxLayer pl : MainApplication.getLayerManager().getLayersOfType(PanoramaxLayer.class)) {
+            pl.fireImageChanged(this, upgraded);
+        }
     }
 
     @Override
     public PanoramaxJosmImage getNextImage() {
-        final PanoramaxCollection collection = getCollection();
-
-        if (collection != null) {
-            final int index = collection.indexOf(this.image);
-            if (collection.size() > index + 1 && index >= 0) {
-                final PanoramaxJosmImage next = new PanoramaxJosmImage(collection.get(index + 1));
-                MainApplication.worker.execute(() -> {
-                    try {
-                        next.read(null);
-                    } catch (IOException e) {
-                        Logging.trace(e); // Not super important.
-                    }
-                });
-                return next;
+        final PanoramaxSequence sequence = getSequence();
+        if (sequence != null) {
+            final PanoramaxImage nextImage = sequence.getNext(this.image);
+            if (nextImage != null) {
+                return new PanoramaxJosmImage(nextImage);
             }
         }
         return null;
@@ -66,11 +152,11 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
 
     @Override
     public PanoramaxJosmImage getPreviousImage() {
-        final PanoramaxCollection collection = getCollection();
-        if (collection != null) {
-            final int index = collection.indexOf(this.image);
-            if (index > 0) {
-                return new PanoramaxJosmImage(collection.get(index - 1));
+        final PanoramaxSequence sequence = getSequence();
+        if (sequence != null) {
+            final PanoramaxImage previous = sequence.getPrevious(this.image);
+            if (previous != null) {
+                return new PanoramaxJosmImage(previous);
             }
         }
         return null;
@@ -78,11 +164,11 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
 
     @Override
     public PanoramaxJosmImage getFirstImage() {
-        final PanoramaxCollection collection = getCollection();
-        if (collection != null) {
-            final int index = collection.indexOf(this.image);
-            if (index > 0) {
-                return new PanoramaxJosmImage(collection.getFirst());
+        final PanoramaxSequence sequence = getSequence();
+        if (sequence != null) {
+            final PanoramaxImage first = sequence.getFirst();
+            if (first != null && !this.image.id().equals(first.id())) {
+                return new PanoramaxJosmImage(first);
             }
         }
         return null;
@@ -90,11 +176,11 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
 
     @Override
     public PanoramaxJosmImage getLastImage() {
-        final PanoramaxCollection collection = getCollection();
-        if (collection != null) {
-            final int index = collection.indexOf(this.image);
-            if (collection.size() > index + 1 && index >= 0) {
-                return new PanoramaxJosmImage(collection.getLast());
+        final PanoramaxSequence sequence = getSequence();
+        if (sequence != null) {
+            final PanoramaxImage last = sequence.getLast();
+            if (last != null && !this.image.id().equals(last.id())) {
+                return new PanoramaxJosmImage(last);
             }
         }
         return null;
@@ -116,8 +202,8 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
         }
     }
 
-    private PanoramaxCollection getCollection() {
-        return PanoramaxApi.getCollection(getRootApi(), this.image.collection());
+    private PanoramaxSequence getSequence() {
+        return PanoramaxApi.getSequence(getRootApi(), this.image.collection());
     }
 
     private String getRootApi() {
@@ -125,6 +211,17 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
                 .map(URI::toString).findFirst().orElse(PanoramaxPreferences.getBaseApiUrl());
     }
 
+    @Override
+    public boolean equals(Object o) {
+        // Different copies of the same picture may come from different pages or cache entries
+        return this == o || (o instanceof PanoramaxJosmImage other && Objects.equals(this.image.id(), other.image.id()));
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(this.image.id());
+    }
+
     @Override
     public String getDisplayName() {
         final StringBuilder sb = new StringBuilder();
@@ -135,10 +232,10 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
             sb.append(provider.name());
             added = true;
         }
-        if (this.hasExifTime()) {
+        final Instant time = this.hasGpsTime() ? this.getExifGpsInstant() : this.getExifInstant();
+        if (time != null) {
             sb.append(" - ");
-            sb.append(DateUtils.getDateTimeFormatter(FormatStyle.SHORT, FormatStyle.MEDIUM)
-                    .format(this.getExifGpsInstant()));
+            sb.append(DateUtils.getDateTimeFormatter(FormatStyle.SHORT, FormatStyle.MEDIUM).format(time));
         }
 
         return sb.toString();
@@ -178,15 +275,28 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
         return this.image;
     }
 
+    /**
+     * Get the EXIF metadata. This is decoded on first use.
+     * @return The EXIF metadata
+     */
+    private PanoramaxExif getExif() {
+        return this.image.properties().exif().get();
+    }
+
+    private PanoramaxTimestamps getTimestamps() {
+        final PanoramaxTimestamps timestamps = this.image.properties().timestamps();
+        return timestamps == null ? EMPTY_TIMESTAMPS : timestamps;
+    }
+
     @Override
     public Double getSpeed() {
-        // TODO: Use this.image.properties().exif().ExifGPSInfoGPSSpeedRef()?
-        return parseRational64u(this.image.properties().exif().ExifGPSInfoGPSSpeed());
+        // TODO: Use this.getExif().ExifGPSInfoGPSSpeedRef()?
+        return parseRational64u(this.getExif().ExifGPSInfoGPSSpeed());
     }
 
     @Override
     public Double getElevation() {
-        return parseRational64u(this.image.properties().exif().ExifGPSInfoGPSAltitude());
+        return parseRational64u(this.getExif().ExifGPSInfoGPSAltitude());
     }
 
     @Override
@@ -211,13 +321,13 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
 
     @Override
     public String getExifGpsProcMethod() {
-        return this.image.properties().exif().ExifGPSInfoGPSProcessingMethod();
+        return this.getExif().ExifGPSInfoGPSProcessingMethod();
     }
 
     @Override
     public Double getExifImgDir() {
-        // TODO use this.image.properties().exif().ExifGPSInfoGPSImgDirectionRef();
-        return parseRational64u(this.image.properties().exif().ExifGPSInfoGPSImgDirection());
+        // TODO use this.getExif().ExifGPSInfoGPSImgDirectionRef();
+        return parseRational64u(this.getExif().ExifGPSInfoGPSImgDirection());
     }
 
     @Override
@@ -232,17 +342,17 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
 
     @Override
     public boolean hasExifTime() {
-        return this.image.properties().exif().ExifImageDateTime() != null;
+        return this.getTimestamps().exif() != PanoramaxTimestamps.NONE;
     }
 
     @Override
     public Instant getExifInstant() {
-        return parseDateTime(this.image.properties().exif().ExifImageDateTime());
+        return PanoramaxTimestamps.toInstant(this.getTimestamps().exif());
     }
 
     @Override
     public boolean hasGpsTime() {
-        return this.image.properties().exif().ExifGPSInfoGPSTimeStamp() != null;
+        return this.getTimestamps().gps() != PanoramaxTimestamps.NONE;
     }
 
     @Override
@@ -252,17 +362,7 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
 
     @Override
     public Instant getExifGpsInstant() {
-        final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy:MM:dd").withZone(ZoneOffset.UTC);
-        final TemporalAccessor ta = dtf.parse(this.image.properties().exif().ExifGPSInfoGPSDateStamp());
-        final String[] parts = this.image.properties().exif().ExifGPSInfoGPSTimeStamp().split(" ", 3);
-        final double[] hhmmss = new double[3];
-        for (int i = 0; i < parts.length; i++) {
-            hhmmss[i] = parseRational64u(parts[i]);
-        }
-        final ZonedDateTime zdt = ZonedDateTime.of(ta.get(ChronoField.YEAR), ta.get(ChronoField.MONTH_OF_YEAR),
-                ta.get(ChronoField.DAY_OF_MONTH), (int) Math.round(hhmmss[0]), (int) Math.round(hhmmss[1]),
-                (int) Math.round(hhmmss[2]), 0, ZoneOffset.UTC);
-        return zdt.toInstant();
+        return PanoramaxTimestamps.toInstant(this.getTimestamps().gps());
     }
 
     @Override
@@ -300,11 +400,4 @@ public class PanoramaxJosmImage implements IImageEntry<PanoramaxJosmImage> {
         }
         return null;
     }
-
-    private static Instant parseDateTime(CharSequence value) {
-        // TODO: is this normalized to UTC in all cases?
-        final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss").withZone(ZoneOffset.UTC);
-        final ZonedDateTime zdt = ZonedDateTime.parse(value, dtf);
-        return zdt.toInstant();
-    }
 }
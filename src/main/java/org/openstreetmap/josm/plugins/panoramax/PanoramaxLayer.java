@@ -11,28 +11,40 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Stroke;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
 import java.awt.geom.AffineTransform;
-import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
+import javax.swing.Timer;
+
+import org.openstreetmap.gui.jmapviewer.interfaces.TileCache;
 import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.coor.ILatLon;
-import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.imagery.ImageryInfo;
+import org.openstreetmap.josm.data.imagery.vectortile.mapbox.MVTTile;
 import org.openstreetmap.josm.data.imagery.street_level.IImageEntry;
 import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.HighlightUpdateListener;
-import org.openstreetmap.josm.data.osm.INode;
-import org.openstreetmap.josm.data.osm.IPrimitive;
-import org.openstreetmap.josm.data.osm.IWay;
-import org.openstreetmap.josm.data.osm.Tagged;
 import org.openstreetmap.josm.data.osm.event.IDataSelectionListener;
+import org.openstreetmap.josm.data.projection.Projection;
 import org.openstreetmap.josm.data.projection.ProjectionRegistry;
 import org.openstreetmap.josm.data.vector.VectorDataSet;
 import org.openstreetmap.josm.data.vector.VectorNode;
@@ -41,30 +53,90 @@ import org.openstreetmap.josm.data.vector.VectorRelation;
 import org.openstreetmap.josm.data.vector.VectorWay;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.gui.layer.MapViewPaintable;
 import org.openstreetmap.josm.gui.layer.geoimage.IGeoImageLayer;
 import org.openstreetmap.josm.gui.layer.geoimage.ImageViewerDialog;
 import org.openstreetmap.josm.gui.layer.imagery.MVTLayer;
+import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxImage;
 import org.openstreetmap.josm.tools.Geometry;
 import org.openstreetmap.josm.tools.HiDPISupport;
 import org.openstreetmap.josm.tools.ListenerList;
-import org.openstreetmap.josm.tools.Logging;
-
-import jakarta.json.Json;
-import jakarta.json.JsonString;
 
 public class PanoramaxLayer extends MVTLayer implements HighlightUpdateListener, IGeoImageLayer,
         IDataSelectionListener<VectorPrimitive, VectorNode, VectorWay, VectorRelation, VectorDataSet> {
+    /** The width of sequence lines, in pixels */
+    private static final float SEQUENCE_WIDTH = 2;
+    /** The maximum number of projected tiles to keep */
+    private static final int MAX_TILE_GEOMETRY = 256;
+    /** Selection changes with more markers than this repaint the whole layer */
+    private static final int MAX_DIRTY_MARKERS = 32;
+    /** The minimum time between hover updates, in milliseconds */
+    private static final int HOVER_DELAY = 25;
+    /** The sequence stroke for the last scale that was drawn. This is shared by the EDT and the render thread. */
+    private static volatile ScaledStroke sequenceStroke = new ScaledStroke(Double.NaN, null);
+
     private static ImageryInfo getImageryInfo() {
         final ImageryInfo imageryInfo = new ImageryInfo(tr("Panoramax"), PanoramaxPreferences.getMvtUrl());
         imageryInfo.setDefaultMaxZoom(PanoramaxPreferences.getMaxZoom());
         return imageryInfo;
     }
 
-    private final Collection<IPrimitive> highlighted = new HashSet<>();
+    /** The unique ids of the highlighted pictures. This is updated on highlight changes, and read when painting. */
+    private volatile long[] highlightedIds = new long[0];
     private final Collection<VectorPrimitive> selected = new HashSet<>();
+    /**
+     * The sorted unique ids of the selected pictures. The tiles and the dataset may have different instances for the
+     * same primitive, so markers are matched by id.
+     */
+    private long[] selectedIds = new long[0];
+    /** {@code true} if the selection is drawn by the {@link MarkerOverlay} instead of the layer */
+    private boolean overlaySelection;
+    /** Tile key to projected tile geometry, in least recently loaded order */
+    private final Map<String, PanoramaxTileGeometry> tileGeometry = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PanoramaxTileGeometry> eldest) {
+            if (size() > MAX_TILE_GEOMETRY) {
+                unindex(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    /**
+     * Tile zoom to picture id to the most recently loaded node for that picture at that zoom. Guarded by
+     * {@link #tileGeometry}.
+     */
+    private final Map<Integer, Map<String, VectorNode>> nodesById = new HashMap<>();
+    /** Primitive unique id to the decoded picture tags. Guarded by {@link #tileGeometry}. */
+    private final Map<Long, PanoramaxPictureTags> tagsByPrimitive = new HashMap<>();
+    /** The marker sprites. This is rebuilt when the marker preferences change. */
+    private PanoramaxMarkerAtlas markerAtlas;
+    /** The cluster grid for drawing on the EDT */
+    private final PanoramaxMarkerGrid markerGrid = new PanoramaxMarkerGrid();
+    /** The cluster grid of the frame on screen, or {@code null} if it was not clustered */
+    private PanoramaxMarkerGrid clusterGrid;
+    /** Incremented when the tiles or the selection change, so that the render thread knows to redraw */
+    private final AtomicInteger generation = new AtomicInteger();
+    /** The background renderer, if asynchronous rendering is enabled */
+    private PanoramaxRenderer renderer;
+    /** The hit grid for drawing on the EDT */
+    private final PanoramaxHitGrid markerHits = new PanoramaxHitGrid();
+    /** The hit grid of the frame on screen, or {@code null} if there is no frame for the current view */
+    private PanoramaxHitGrid hitGrid;
+    /** The last mouse position, or {@code null} if the mouse is not over the map */
+    private Point mousePosition;
+    /** The unique id of the picture under the mouse, or 0 */
+    private long hoveredId;
+    private int hoveredX;
+    private int hoveredY;
+    private double hoveredHeading;
+    /** Draws the hovered marker over the layer, so that hovering does not change the layer */
+    private final MarkerOverlay markerOverlay = new MarkerOverlay();
+    /** Coalesces mouse moves, so that hit testing runs at most once per {@link #HOVER_DELAY} */
+    private final Timer hoverTimer = new Timer(HOVER_DELAY, e -> updateHover());
     private final ListenerList<ImageChangeListener> imageChangeListenerListenerList = ListenerList.create();
-    private final MouseListener mouseListener = new DataMouseListener();
+    private final DataMouseListener mouseListener = new DataMouseListener();
     private final MapView mv = MainApplication.getMap().mapView;
     private final String api;
 
@@ -78,73 +150,296 @@ public class PanoramaxLayer extends MVTLayer implements HighlightUpdateListener,
         this.getData().addSelectionListener(this);
         this.getData().addHighlightUpdateListener(this);
         mv.addMouseListener(mouseListener);
+        mv.addMouseMotionListener(mouseListener);
+        mv.addTemporaryLayer(markerOverlay);
+        this.hoverTimer.setRepeats(false);
     }
 
     @Override
     public void paint(Graphics2D g, MapView mv, Bounds box) {
+        final int zoom = Math.min(this.getZoomLevel(), this.getInfo().getMaxZoom());
+        this.getData().setZoom(zoom);
+        final PanoramaxRenderer.Viewport viewport = getViewport(g, mv, zoom);
+        if (PanoramaxPreferences.isAsyncRendering()) {
+            if (this.renderer == null) {
+                this.renderer = new PanoramaxRenderer(this::render, () -> GuiHelper.runInEDT(this::invalidate));
+            }
+            this.renderer.request(viewport);
+            this.renderer.draw(g, viewport);
+            this.clusterGrid = this.renderer.getGrid(viewport);
+            this.hitGrid = this.renderer.getHitGrid(viewport);
+        } else {
+            render(g, viewport, this.markerGrid, this.markerHits);
+            this.clusterGrid = viewport.clustered() ? this.markerGrid : null;
+            this.hitGrid = this.markerHits;
+            if (this.renderer != null) {
+                // Asynchronous rendering was turned off
+                this.renderer.shutdown();
+                this.renderer = null;
+            }
+        }
+        // The markers may have moved; the overlay is drawn after this layer
+        findHover();
+    }
+
+    @Override
+    public void setVisible(boolean visible) {
+        super.setVisible(visible);
+        // Show or hide the markers drawn by the overlay
+        mv.repaint();
+    }
+
+    /**
+     * Collect the view and the preferences that are needed to draw the layer
+     * @param g The graphics that will be drawn on
+     * @param mv The map view
+     * @param zoom The zoom level of the tiles to draw
+     * @return The view
+     */
+    private PanoramaxRenderer.Viewport getViewport(Graphics2D g, MapView mv, int zoom) {
         final Color sequenceColor = PanoramaxPreferences.getSequenceColor();
-        final Color imageColor = PanoramaxPreferences.getImageColor();
-        final int imageSize = PanoramaxPreferences.getImageSize();
-        this.getData().setZoom(Math.min(this.getZoomLevel(), this.getInfo().getMaxZoom()));
-        if (this.getZoomLevel() >= 6) {
-            g.setColor(sequenceColor);
-            g.setStroke(new BasicStroke(2));
-            for (IWay<?> seq : getData().searchWays(box.toBBox())) {
-                INode previous = null;
-                Point previousPoint = null;
-                for (INode current : seq.getNodes()) {
-                    if (previous != null && (box.contains(current) || box.contains(previous))) {
-                        if (previousPoint == null)
-                            previousPoint = mv.getPoint(previous);
-                        final Point currentPoint = mv.getPoint(current);
-                        g.drawLine(previousPoint.x, previousPoint.y, currentPoint.x, currentPoint.y);
-                        previous = current;
-                        previousPoint = currentPoint;
-                    } else {
-                        previous = current;
-                        previousPoint = null;
-                    }
-                }
+        final int zoomLevel = this.getZoomLevel();
+        this.markerAtlas = PanoramaxMarkerAtlas.get(this.markerAtlas, PanoramaxPreferences.getImageSize(),
+                PanoramaxPreferences.getImageColor(), sequenceColor);
+        final EastNorth topLeft = mv.getEastNorth(0, 0);
+        final boolean clustered = PanoramaxPreferences.isMarkerClustering() && zoomLevel >= 13
+                && zoomLevel <= PanoramaxPreferences.getClusterMaxZoom();
+        // Selected markers are drawn individually on the EDT, so the overlay can draw them without touching the layer
+        this.overlaySelection = !clustered && !PanoramaxPreferences.isAsyncRendering();
+        final long[] selectedIds = this.overlaySelection ? new long[0] : this.selectedIds;
+        return new PanoramaxRenderer.Viewport(topLeft.east(), topLeft.north(), mv.getScale(), mv.getWidth(),
+                mv.getHeight(), g.getTransform().getScaleX(), zoomLevel, zoom, ProjectionRegistry.getProjection(),
+                mv.getRealBounds(), selectedIds, this.highlightedIds, this.markerAtlas, sequenceColor, clustered,
+                PanoramaxPreferences.getClusterCellSize(), PanoramaxPreferences.isClusterBadge(),
+                this.generation.get());
+    }
+
+    /**
+     * Draw the layer. This may be called from the render thread, so it must only use the view.
+     * @param g The graphics to draw on, in screen pixels
+     * @param viewport The view
+     * @param grid The cluster grid
+     * @param hits The hit grid to fill with the visible markers
+     */
+    private void render(Graphics2D g, PanoramaxRenderer.Viewport viewport, PanoramaxMarkerGrid grid,
+            PanoramaxHitGrid hits) {
+        final double scale = viewport.scale();
+        final double east = viewport.east();
+        final double north = viewport.north();
+        final int width = viewport.width();
+        final int height = viewport.height();
+        final List<PanoramaxTileGeometry> tiles = getTileGeometry(viewport.dataZoom(), viewport.projection(),
+                viewport.bounds(), east, north, east + width * scale, north - height * scale);
+        if (viewport.zoomLevel() >= 6) {
+            // The tile geometry is in east/north, so draw it in east/north with a stroke of the same screen width
+            final AffineTransform transform = g.getTransform();
+            final Stroke stroke = g.getStroke();
+            g.setColor(viewport.sequenceColor());
+            g.setStroke(getSequenceStroke(scale));
+            g.transform(new AffineTransform(1 / scale, 0, 0, -1 / scale, -east / scale, north / scale));
+            for (PanoramaxTileGeometry tile : tiles) {
+                g.draw(tile.getSequences());
             }
+            g.setTransform(transform);
+            g.setStroke(stroke);
         }
 
-        final AffineTransform original = g.getTransform();
+        // The grids are reused between frames, so clear them even if no markers are drawn
+        if (viewport.clustered()) {
+            grid.reset(width, height, viewport.cellSize());
+        }
+        hits.reset(width, height);
         // Paint images or overview
-        if (this.getZoomLevel() >= 13 || this.getZoomLevel() < 6) {
+        if (viewport.zoomLevel() >= 13 || viewport.zoomLevel() < 6) {
+            final PanoramaxMarkerAtlas atlas = viewport.atlas();
+            final int imageSize = atlas.getImageSize();
+            // Partial repaints only need the markers in the dirty rectangle
+            final Rectangle clip = g.getClipBounds();
             // Paint images (tagged)
-            for (INode node : getData().searchNodes(box.toBBox())) {
-                if (node.isTagged()) {
-                    final Point current = mv.getPoint(node);
-                    g.setColor(imageColor);
-                    g.fillOval(current.x - imageSize / 2, current.y - imageSize / 2, imageSize, imageSize);
-                    g.setColor(sequenceColor);
-                    if (node.hasKey("heading")) {
-                        final AffineTransform transform = new AffineTransform(original);
-                        try {
-                            final double heading = Double.parseDouble(node.get("heading"));
-                            transform.rotate(Math.toRadians(heading), current.x, current.y);
-                            g.setTransform(transform);
-                            g.drawLine(current.x, current.y, current.x, current.y - imageSize / 2);
-                        } catch (NumberFormatException nfe) {
-                            Logging.error(nfe);
-                        } finally {
-                            g.setTransform(original);
+            for (PanoramaxTileGeometry tile : tiles) {
+                for (int i = 0; i < tile.getMarkerCount(); i++) {
+                    final int x = (int) ((tile.getEast(i) - east) / scale);
+                    final int y = (int) ((north - tile.getNorth(i)) / scale);
+                    if (x < -imageSize || y < -imageSize || x > width + imageSize || y > height + imageSize) {
+                        continue;
+                    }
+                    final VectorNode node = tile.getNode(i);
+                    if (!viewport.clustered()) {
+                        hits.add(x, y, tile.getHeading(i), node);
+                        if (clip != null && (x < clip.x - imageSize || y < clip.y - imageSize
+                                || x > clip.x + clip.width + imageSize || y > clip.y + clip.height + imageSize)) {
+                            continue;
                         }
                     }
-                    if (this.selected.contains(node)) {
-                        g.setColor(Color.GREEN);
-                        final int radius = (imageSize + 2) / 2;
-                        g.drawOval(current.x - radius, current.y - radius, 2 * radius, 2 * radius);
+                    final int state;
+                    if (contains(viewport.selectedIds(), node.getUniqueId())) {
+                        state = PanoramaxMarkerAtlas.SELECTED;
+                    } else if (contains(viewport.highlightedIds(), node.getUniqueId())) {
+                        state = PanoramaxMarkerAtlas.HIGHLIGHTED;
+                    } else {
+                        state = PanoramaxMarkerAtlas.NORMAL;
+                    }
+                    if (viewport.clustered()) {
+                        grid.add(x, y, tile.getHeading(i), state, node);
+                    } else {
+                        atlas.draw(g, x, y, tile.getHeading(i), state);
                     }
                 }
             }
+            if (viewport.clustered()) {
+                // Only the marker drawn for each cluster can be hovered
+                grid.addHits(hits);
+                grid.draw(g, atlas, viewport.badges(), viewport.sequenceColor());
+            }
         }
-        g.setTransform(original);
+    }
+
+    /**
+     * Get the stroke for sequence lines that are drawn in east/north
+     * @param scale The scale of the view, in east/north units per pixel
+     * @return A stroke that is {@link #SEQUENCE_WIDTH} pixels wide at that scale
+     */
+    static BasicStroke getSequenceStroke(double scale) {
+        ScaledStroke stroke = sequenceStroke;
+        if (stroke.scale() != scale) {
+            stroke = new ScaledStroke(scale, new BasicStroke((float) (SEQUENCE_WIDTH * scale)));
+            sequenceStroke = stroke;
+        }
+        return stroke.stroke();
+    }
+
+    /**
+     * Get the projected tiles that are in view. Tiles that JOSM has unloaded are dropped.
+     * @param zoom The zoom level of the tiles to get
+     * @param projection The projection of the view
+     * @param bounds The lat/lon bounds of the view
+     * @param east1 The east of one corner of the view
+     * @param north1 The north of one corner of the view
+     * @param east2 The east of the opposite corner of the view
+     * @param north2 The north of the opposite corner of the view
+     * @return The tiles, projected with the view projection
+     */
+    private List<PanoramaxTileGeometry> getTileGeometry(int zoom, Projection projection, Bounds bounds, double east1,
+            double north1, double east2, double north2) {
+        final List<PanoramaxTileGeometry> tiles = new ArrayList<>();
+        synchronized (this.tileGeometry) {
+            for (Iterator<Map.Entry<String, PanoramaxTileGeometry>> iterator = this.tileGeometry.entrySet()
+                    .iterator(); iterator.hasNext();) {
+                final Map.Entry<String, PanoramaxTileGeometry> entry = iterator.next();
+                // Only tiles in view are projected, so a projection change does not reproject every loaded tile
+                if (entry.getValue().getZoom() != zoom || !entry.getValue().intersects(bounds)) {
+                    continue;
+                }
+                if (isUnloaded(entry.getValue().getTile())) {
+                    unindex(entry.getValue());
+                    iterator.remove();
+                    continue;
+                }
+                final PanoramaxTileGeometry geometry = entry.getValue().in(projection);
+                entry.setValue(geometry);
+                if (geometry.intersects(east1, north1, east2, north2)) {
+                    tiles.add(geometry);
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Check if a tile is no longer in the tile cache. This is only called for tiles in view, which the tile layer
+     * looks up in the cache anyway, so it does not change which tiles the cache keeps.
+     * @param tile The tile
+     * @return {@code true} if the tile cache has dropped or replaced the tile
+     */
+    private boolean isUnloaded(MVTTile tile) {
+        final TileCache cache = this.tileCache;
+        return cache != null
+                && cache.getTile(tile.getSource(), tile.getXtile(), tile.getYtile(), tile.getZoom()) != tile;
+    }
+
+    @Override
+    public void clearTileCache() {
+        super.clearTileCache();
+        synchronized (this.tileGeometry) {
+            this.tileGeometry.clear();
+            this.nodesById.clear();
+            this.tagsByPrimitive.clear();
+        }
+        this.generation.incrementAndGet();
+    }
+
+    /**
+     * Remove the pictures of a tile from the id index. Must be called with the {@link #tileGeometry} lock held.
+     * @param geometry The tile that is going away
+     */
+    private void unindex(PanoramaxTileGeometry geometry) {
+        final Map<String, VectorNode> nodes = this.nodesById.get(geometry.getZoom());
+        for (int i = 0; i < geometry.getMarkerCount(); i++) {
+            final VectorNode node = geometry.getNode(i);
+            final PanoramaxPictureTags tags = geometry.getTags(i);
+            // Another tile may have loaded the same picture since
+            if (nodes != null && tags.id() != null) {
+                nodes.remove(tags.id(), node);
+            }
+            this.tagsByPrimitive.remove(node.getUniqueId(), tags);
+        }
+        if (nodes != null && nodes.isEmpty()) {
+            this.nodesById.remove(geometry.getZoom());
+        }
+    }
+
+    /**
+     * Get the loaded node for a picture
+     * @param id The picture id
+     * @return The node, or {@code null} if no loaded tile at the current zoom has the picture
+     */
+    private VectorNode getNode(String id) {
+        synchronized (this.tileGeometry) {
+            final Map<String, VectorNode> nodes = this.nodesById.get(this.getData().getZoom());
+            return nodes == null ? null : nodes.get(id);
+        }
+    }
+
+    private static boolean contains(long[] ids, long id) {
+        for (long current : ids) {
+            if (current == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void finishedLoading(MVTTile tile) {
+        super.finishedLoading(tile);
+        // This is called from the tile loader, so the projection work stays off the EDT
+        final PanoramaxTileGeometry geometry = PanoramaxTileGeometry.of(tile, ProjectionRegistry.getProjection());
+        synchronized (this.tileGeometry) {
+            final PanoramaxTileGeometry old = this.tileGeometry.put(tile.getKey(), geometry);
+            if (old != null) {
+                unindex(old);
+            }
+            final Map<String, VectorNode> nodes = this.nodesById.computeIfAbsent(tile.getZoom(),
+                    zoom -> new HashMap<>());
+            for (int i = 0; i < geometry.getMarkerCount(); i++) {
+                final VectorNode node = geometry.getNode(i);
+                final PanoramaxPictureTags tags = geometry.getTags(i);
+                this.tagsByPrimitive.put(node.getUniqueId(), tags);
+                if (tags.id() != null) {
+                    nodes.put(tags.id(), node);
+                }
+            }
+        }
+        this.generation.incrementAndGet();
     }
 
     @Override
     public void highlightUpdated(HighlightUpdateEvent e) {
-        // FIXME
+        // Highlighting is read here instead of when drawing, since drawing may be on the render thread
+        this.highlightedIds = this.getData().getNodes().stream().filter(VectorNode::isHighlighted)
+                .mapToLong(VectorNode::getUniqueId).toArray();
+        this.generation.incrementAndGet();
+        this.invalidate();
     }
 
     @Override
@@ -152,16 +447,49 @@ public class PanoramaxLayer extends MVTLayer implements HighlightUpdateListener,
             SelectionChangeEvent<VectorPrimitive, VectorNode, VectorWay, VectorRelation, VectorDataSet> event) {
         this.selected.removeAll(event.getRemoved());
         this.selected.addAll(event.getAdded());
+        updateSelectedIds();
         if (this.selected.size() == 1) {
             ImageViewerDialog.getInstance().displayImages(getSelection());
         }
-        this.invalidate();
+        repaintMarkers(event.getRemoved(), event.getAdded());
     }
 
     @Override
     public void clearSelection() {
+        final List<VectorPrimitive> removed = new ArrayList<>(this.selected);
         this.selected.clear();
-        this.invalidate();
+        updateSelectedIds();
+        repaintMarkers(removed, Collections.emptyList());
+    }
+
+    private void updateSelectedIds() {
+        final long[] ids = this.selected.stream().mapToLong(VectorPrimitive::getUniqueId).toArray();
+        Arrays.sort(ids);
+        this.selectedIds = ids;
+    }
+
+    /**
+     * Repaint the markers whose selection changed. If the selection is drawn by the {@link MarkerOverlay}, this only
+     * repaints the changed markers where they were drawn in the frame on screen. Otherwise the selection is part of
+     * the layer, so the layer is invalidated.
+     * @param removed The primitives that are no longer selected
+     * @param added The primitives that are newly selected
+     */
+    private void repaintMarkers(Collection<? extends VectorPrimitive> removed,
+            Collection<? extends VectorPrimitive> added) {
+        final PanoramaxHitGrid hits = this.hitGrid;
+        if (!this.overlaySelection || hits == null || removed.size() + added.size() > MAX_DIRTY_MARKERS) {
+            this.invalidate();
+            return;
+        }
+        final long[] changed = Stream.concat(removed.stream(), added.stream()).mapToLong(VectorPrimitive::getUniqueId)
+                .sorted().toArray();
+        for (int i = 0; i < hits.size(); i++) {
+            final VectorNode node = hits.getNode(i);
+            if (node != null && Arrays.binarySearch(changed, node.getUniqueId()) >= 0) {
+                repaintMarker(hits.getX(i), hits.getY(i));
+            }
+        }
     }
 
     @Override
@@ -169,22 +497,22 @@ public class PanoramaxLayer extends MVTLayer implements HighlightUpdateListener,
         return this.selected.stream().map(this::getImageFromPrimitive).map(PanoramaxJosmImage::new).toList();
     }
 
-    private PanoramaxImage getImageFromPrimitive(Tagged object) {
-        final String seq = object.get("sequences");
-        final String[] sequences = Json.createReader(new StringReader(seq)).readArray().stream()
-                .filter(JsonString.class::isInstance).map(JsonString.class::cast).map(JsonString::getString)
-                .toArray(String[]::new);
-        return PanoramaxApi.getItem(this.api, sequences[0], object.get("id"));
+    private PanoramaxImage getImageFromPrimitive(VectorPrimitive primitive) {
+        PanoramaxPictureTags tags;
+        synchronized (this.tileGeometry) {
+            tags = this.tagsByPrimitive.get(primitive.getUniqueId());
+        }
+        if (tags == null) {
+            // The tile for this picture is no longer indexed
+            tags = PanoramaxPictureTags.of(primitive);
+        }
+        return PanoramaxApi.getItem(this.api, tags.sequence(), tags.id());
     }
 
     @Override
     public boolean containsImage(IImageEntry<?> imageEntry) {
         if (imageEntry instanceof PanoramaxJosmImage pji) {
-            final BBox searchBBox = new BBox(pji.getPos());
-            searchBBox.addLatLon(new LatLon(pji.getPos().lat(), pji.getPos().lon()), .0001);
-            final String id = pji.getImage().id();
-            return this.getData().searchNodes(searchBBox).stream().filter(p -> p.hasKey("id")).map(p -> p.get("id"))
-                    .anyMatch(id::equals);
+            return getNode(pji.getImage().id()) != null;
         }
         return false;
     }
@@ -199,14 +527,35 @@ public class PanoramaxLayer extends MVTLayer implements HighlightUpdateListener,
         this.imageChangeListenerListenerList.removeListener(listener);
     }
 
+    /**
+     * Notify listeners that an image has changed, e.g. when a higher resolution version has been downloaded
+     * @param oldImage The image that changed
+     * @param newImage The new instance of the image. This must not be {@code oldImage}, or the viewer will not
+     *                 reload it.
+     */
+    void fireImageChanged(IImageEntry<?> oldImage, IImageEntry<?> newImage) {
+        final List<IImageEntry<?>> oldImages = Collections.singletonList(oldImage);
+        final List<IImageEntry<?>> newImages = Collections.singletonList(newImage);
+        this.imageChangeListenerListenerList.fireEvent(listener -> listener.imageChanged(this, oldImages, newImages));
+    }
+
     @Override
     public synchronized void destroy() {
         super.destroy();
         mv.removeMouseListener(this.mouseListener);
+        mv.removeMouseMotionListener(this.mouseListener);
+        mv.removeTemporaryLayer(this.markerOverlay);
+        this.hoverTimer.stop();
+        if (this.renderer != null) {
+            this.renderer.shutdown();
+        }
     }
 
     private void fireClickEvent(MouseEvent e) {
-        if (e.getClickCount() >= 3) {
+        if (this.clusterGrid != null && this.clusterGrid.getCount(e.getX(), e.getY()) > 1) {
+            // Zoom in on the cluster, until the markers are drawn individually
+            mv.zoomToFactor(e.getX(), e.getY(), 0.5);
+        } else if (e.getClickCount() >= 3) {
             this.clearSelection();
         } else {
             final ILatLon latLon = mv.getLatLon(e.getX(), e.getY());
@@ -217,6 +566,59 @@ public class PanoramaxLayer extends MVTLayer implements HighlightUpdateListener,
         }
     }
 
+    /**
+     * Update the picture under the mouse, and repaint the markers that changed
+     */
+    private void updateHover() {
+        final long oldId = this.hoveredId;
+        final int oldX = this.hoveredX;
+        final int oldY = this.hoveredY;
+        findHover();
+        if (oldId == this.hoveredId && oldX == this.hoveredX && oldY == this.hoveredY) {
+            return;
+        }
+        if (oldId != 0) {
+            repaintMarker(oldX, oldY);
+        }
+        if (this.hoveredId != 0) {
+            repaintMarker(this.hoveredX, this.hoveredY);
+        }
+    }
+
+    /**
+     * Find the picture under the mouse in the hit grid of the frame on screen
+     */
+    private void findHover() {
+        final PanoramaxHitGrid hits = this.hitGrid;
+        final Point mouse = this.mousePosition;
+        // The hit grid is not updated while the layer is hidden
+        final int marker = !this.isVisible() || hits == null || mouse == null || this.markerAtlas == null ? -1
+                : hits.find(mouse.x, mouse.y, this.markerAtlas.getImageSize() / 2 + 2);
+        final VectorNode node = marker < 0 ? null : hits.getNode(marker);
+        this.hoveredId = node == null ? 0 : node.getUniqueId();
+        if (node != null) {
+            this.hoveredX = hits.getX(marker);
+            this.hoveredY = hits.getY(marker);
+            this.hoveredHeading = hits.getHeading(marker);
+        }
+    }
+
+    /**
+     * Repaint the screen area of a single marker. This only repaints the map view, so it must only be used for
+     * changes to the {@link MarkerOverlay}; the map view keeps drawing the layer from its buffer until the layer is
+     * invalidated.
+     * @param x The screen x of the marker
+     * @param y The screen y of the marker
+     */
+    private void repaintMarker(int x, int y) {
+        if (this.markerAtlas == null) {
+            return;
+        }
+        // Leave room for the selection ring
+        final int radius = this.markerAtlas.getImageSize() / 2 + 4;
+        mv.repaint(x - radius, y - radius, 2 * radius, 2 * radius);
+    }
+
     private static BBox makeSearchBBox(MapView mv, ILatLon latLon) {
         final double scaleInEastNorthUnitsPerPixel = mv.getScale();
         final double metersPerPixel = ProjectionRegistry.getProjection().getMetersPerUnit()
@@ -234,19 +636,55 @@ public class PanoramaxLayer extends MVTLayer implements HighlightUpdateListener,
             return;
         }
         final List<VectorNode> newImagesFiltered = newImages.stream().filter(PanoramaxJosmImage.class::isInstance)
-                .map(PanoramaxJosmImage.class::cast).map(this::findNode).toList();
+                .map(PanoramaxJosmImage.class::cast).map(this::findNode).filter(Objects::nonNull).toList();
         this.getData().setSelected(newImagesFiltered);
+        // selectionChanged only repaints the markers that changed, and the same image may have been reloaded
         this.invalidate();
     }
 
     private VectorNode findNode(PanoramaxJosmImage image) {
-        final BBox searchBBox = new BBox(image.getImage());
-        searchBBox.addLatLon(new LatLon(image.getImage()), 0.0001);
-        return this.getData().searchNodes(searchBBox).stream().filter(n -> image.getImage().id().equals(n.get("id")))
-                .findFirst().orElse(null);
+        return getNode(image.getImage().id());
     }
 
-    private class DataMouseListener implements MouseListener {
+    /**
+     * A sequence stroke and the scale it was made for
+     * @param scale The scale of the view, in east/north units per pixel
+     * @param stroke The stroke
+     */
+    private record ScaledStroke(double scale, BasicStroke stroke) {
+    }
+
+    /**
+     * Draw the hovered marker, and the selected markers if the layer does not draw them. This is a temporary layer of
+     * the map view, so it is drawn over the layers on every repaint, and hover and selection changes only need to
+     * repaint the marker area.
+     */
+    private class MarkerOverlay implements MapViewPaintable {
+        @Override
+        public void paint(Graphics2D g, MapView mv, Bounds bbox) {
+            final PanoramaxMarkerAtlas atlas = markerAtlas;
+            final PanoramaxHitGrid hits = hitGrid;
+            // The map view draws temporary layers whether or not this layer is visible
+            if (atlas == null || !isVisible()) {
+                return;
+            }
+            final long[] ids = selectedIds;
+            if (overlaySelection && ids.length > 0 && hits != null) {
+                for (int i = 0; i < hits.size(); i++) {
+                    final VectorNode node = hits.getNode(i);
+                    if (node != null && Arrays.binarySearch(ids, node.getUniqueId()) >= 0) {
+                        atlas.draw(g, hits.getX(i), hits.getY(i), hits.getHeading(i), PanoramaxMarkerAtlas.SELECTED);
+                    }
+                }
+            }
+            // The selection ring takes precedence over the hover ring
+            if (hoveredId != 0 && Arrays.binarySearch(ids, hoveredId) < 0) {
+                atlas.draw(g, hoveredX, hoveredY, hoveredHeading, PanoramaxMarkerAtlas.HIGHLIGHTED);
+            }
+        }
+    }
+
+    private class DataMouseListener implements MouseListener, MouseMotionListener {
 
         @Override
         public void mouseClicked(MouseEvent e) {
@@ -270,7 +708,21 @@ public class PanoramaxLayer extends MVTLayer implements HighlightUpdateListener,
 
         @Override
         public void mouseExited(MouseEvent e) {
+            mousePosition = null;
+            hoverTimer.restart();
+        }
+
+        @Override
+        public void mouseDragged(MouseEvent e) {
             // Skip
         }
+
+        @Override
+        public void mouseMoved(MouseEvent e) {
+            mousePosition = e.getPoint();
+            if (!hoverTimer.isRunning()) {
+                hoverTimer.start();
+            }
+        }
     }
 }
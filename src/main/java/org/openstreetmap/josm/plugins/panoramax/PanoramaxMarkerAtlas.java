@@ -0,0 +1,121 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Pre-rendered picture markers. Each marker is rendered once per heading bucket and state, and painting a marker is
+ * a single image copy from the atlas.
+ */
+final class PanoramaxMarkerAtlas {
+    /** A marker that is neither selected nor highlighted */
+    static final int NORMAL = 0;
+    /** A selected marker */
+    static final int SELECTED = 1;
+    /** A highlighted marker */
+    static final int HIGHLIGHTED = 2;
+    /** The number of heading buckets; this is 5 degrees per bucket */
+    private static final int BUCKETS = 72;
+    private static final int STATES = 3;
+    private static final BasicStroke STROKE = new BasicStroke(2);
+
+    private final int imageSize;
+    private final Color imageColor;
+    private final Color sequenceColor;
+    /** The size of a single marker cell */
+    private final int cell;
+    /** Rows are states, columns are heading buckets, and the last column is for markers without a heading */
+    private final BufferedImage atlas;
+
+    private PanoramaxMarkerAtlas(int imageSize, Color imageColor, Color sequenceColor) {
+        this.imageSize = imageSize;
+        this.imageColor = imageColor;
+        this.sequenceColor = sequenceColor;
+        // Leave room for the selection ring and the stroke width
+        this.cell = imageSize + 6;
+        this.atlas = new BufferedImage(this.cell * (BUCKETS + 1), this.cell * STATES, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = this.atlas.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setStroke(STROKE);
+            for (int state = 0; state < STATES; state++) {
+                for (int bucket = 0; bucket <= BUCKETS; bucket++) {
+                    render(g, bucket * this.cell + this.cell / 2, state * this.cell + this.cell / 2, bucket, state);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Get an atlas for the marker settings
+     * @param current The current atlas, which is reused if the settings have not changed
+     * @param imageSize The marker size
+     * @param imageColor The marker color
+     * @param sequenceColor The heading color
+     * @return An atlas for the settings
+     */
+    @Nonnull
+    static PanoramaxMarkerAtlas get(PanoramaxMarkerAtlas current, int imageSize, @Nonnull Color imageColor,
+            @Nonnull Color sequenceColor) {
+        if (current != null && current.imageSize == imageSize && Objects.equals(current.imageColor, imageColor)
+                && Objects.equals(current.sequenceColor, sequenceColor)) {
+            return current;
+        }
+        return new PanoramaxMarkerAtlas(imageSize, imageColor, sequenceColor);
+    }
+
+    /**
+     * Get the marker size this atlas was rendered for
+     * @return The marker size
+     */
+    int getImageSize() {
+        return this.imageSize;
+    }
+
+    /**
+     * Draw a marker
+     * @param g The graphics to draw on
+     * @param x The screen x of the picture
+     * @param y The screen y of the picture
+     * @param heading The heading in degrees, or {@link Double#NaN}
+     * @param state One of {@link #NORMAL}, {@link #SELECTED}, or {@link #HIGHLIGHTED}
+     */
+    void draw(Graphics2D g, int x, int y, double heading, int state) {
+        final int bucket = Double.isNaN(heading) ? BUCKETS : Math.floorMod((int) Math.round(heading / 5), BUCKETS);
+        final int sx = bucket * this.cell;
+        final int sy = state * this.cell;
+        final int dx = x - this.cell / 2;
+        final int dy = y - this.cell / 2;
+        g.drawImage(this.atlas, dx, dy, dx + this.cell, dy + this.cell, sx, sy, sx + this.cell, sy + this.cell, null);
+    }
+
+    private void render(Graphics2D g, int x, int y, int bucket, int state) {
+        g.setColor(this.imageColor);
+        g.fillOval(x - this.imageSize / 2, y - this.imageSize / 2, this.imageSize, this.imageSize);
+        if (bucket < BUCKETS) {
+            // Screen y points down, so a heading of 0 points to -y and headings go clockwise
+            final double radians = Math.toRadians(bucket * 5d);
+            g.setColor(this.sequenceColor);
+            g.drawLine(x, y, x + (int) Math.round(Math.sin(radians) * (this.imageSize / 2)),
+                    y - (int) Math.round(Math.cos(radians) * (this.imageSize / 2)));
+        }
+        if (state != NORMAL) {
+            final int radius = (this.imageSize + 2) / 2;
+            g.setColor(state == SELECTED ? Color.GREEN : Color.YELLOW);
+            g.drawOval(x - radius, y - radius, 2 * radius, 2 * radius);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.util.Arrays;
+
+import org.openstreetmap.josm.data.vector.VectorNode;
+
+/**
+ * A screen space grid for picture markers. Only one marker is drawn per cell, so the cost of drawing depends on the
+ * size of the screen instead of the number of pictures.
+ * <p>
+ * This is filled by the thread drawing the frame, which is the render thread if asynchronous rendering is enabled, and
+ * read on the EDT once the frame is done. It is not synchronized: the render thread uses a new grid for each frame,
+ * and the grid of the EDT reuses its arrays between frames.
+ */
+final class PanoramaxMarkerGrid {
+    /** Badge labels, so that drawing a badge does not allocate */
+    private static final String[] LABELS = new String[101];
+
+    static {
+        for (int i = 0; i < LABELS.length - 1; i++) {
+            LABELS[i] = Integer.toString(i);
+        }
+        LABELS[LABELS.length - 1] = "99+";
+    }
+
+    private int cellSize;
+    private int columns;
+    private int rows;
+    private int[] counts = new int[0];
+    private int[] x = new int[0];
+    private int[] y = new int[0];
+    private int[] state = new int[0];
+    private double[] heading = new double[0];
+    private VectorNode[] nodes = new VectorNode[0];
+
+    /**
+     * Clear the grid for a new frame
+     * @param width The screen width
+     * @param height The screen height
+     * @param cellSize The size of a cell in pixels
+     */
+    void reset(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = width / cellSize + 1;
+        this.rows = height / cellSize + 1;
+        final int cells = this.columns * this.rows;
+        if (this.counts.length < cells) {
+            this.counts = new int[cells];
+            this.x = new int[cells];
+            this.y = new int[cells];
+            this.state = new int[cells];
+            this.heading = new double[cells];
+            this.nodes = new VectorNode[cells];
+        } else {
+            Arrays.fill(this.counts, 0, cells, 0);
+            // Don't keep nodes from unloaded tiles alive
+            Arrays.fill(this.nodes, null);
+        }
+    }
+
+    /**
+     * Add a marker to the grid. The first marker in a cell is drawn, unless a later marker is selected or
+     * highlighted.
+     * @param markerX The screen x
+     * @param markerY The screen y
+     * @param markerHeading The heading
+     * @param markerState The marker state
+     * @param node The picture node
+     */
+    void add(int markerX, int markerY, double markerHeading, int markerState, VectorNode node) {
+        final int cell = cell(markerX, markerY);
+        if (cell < 0) {
+            return;
+        }
+        if (this.counts[cell]++ == 0 || priority(markerState) > priority(this.state[cell])) {
+            this.x[cell] = markerX;
+            this.y[cell] = markerY;
+            this.heading[cell] = markerHeading;
+            this.state[cell] = markerState;
+            this.nodes[cell] = node;
+        }
+    }
+
+    /**
+     * Add the markers that are drawn to a hit grid. Markers that are hidden in a cluster are not added, so only the
+     * marker that is drawn for a cluster can be hovered.
+     * @param hits The hit grid
+     */
+    void addHits(PanoramaxHitGrid hits) {
+        for (int cell = 0; cell < this.columns * this.rows; cell++) {
+            if (this.counts[cell] > 0) {
+                hits.add(this.x[cell], this.y[cell], this.heading[cell], this.nodes[cell]);
+            }
+        }
+    }
+
+    /**
+     * Get the number of markers in the cell at a screen position, as of the last frame
+     * @param screenX The screen x
+     * @param screenY The screen y
+     * @return The number of markers
+     */
+    int getCount(int screenX, int screenY) {
+        final int cell = cell(screenX, screenY);
+        return cell < 0 ? 0 : this.counts[cell];
+    }
+
+    /**
+     * Draw the markers
+     * @param g The graphics to draw on
+     * @param atlas The marker sprites
+     * @param badges {@code true} if cells with more than one marker should show the count
+     * @param badgeColor The badge background color
+     */
+    void draw(Graphics2D g, PanoramaxMarkerAtlas atlas, boolean badges, Color badgeColor) {
+        final FontMetrics metrics = badges ? g.getFontMetrics() : null;
+        for (int cell = 0; cell < this.columns * this.rows; cell++) {
+            if (this.counts[cell] == 0) {
+                continue;
+            }
+            atlas.draw(g, this.x[cell], this.y[cell], this.heading[cell], this.state[cell]);
+            if (metrics != null && this.counts[cell] > 1) {
+                final String label = LABELS[Math.min(this.counts[cell], LABELS.length - 1)];
+                final int labelX = this.x[cell] + 4;
+                final int labelY = this.y[cell] - 4;
+                final int labelWidth = metrics.stringWidth(label) + 4;
+                g.setColor(badgeColor);
+                g.fillRoundRect(labelX, labelY - metrics.getAscent(), labelWidth, metrics.getHeight(), 6, 6);
+                g.setColor(Color.WHITE);
+                g.drawString(label, labelX + 2, labelY);
+            }
+        }
+    }
+
+    private int cell(int screenX, int screenY) {
+        if (this.cellSize <= 0 || screenX < 0 || screenY < 0) {
+            return -1;
+        }
+        final int column = screenX / this.cellSize;
+        final int row = screenY / this.cellSize;
+        return column >= this.columns || row >= this.rows ? -1 : row * this.columns + column;
+    }
+
+    private static int priority(int markerState) {
+        return switch (markerState) {
+            case PanoramaxMarkerAtlas.SELECTED -> 2;
+            case PanoramaxMarkerAtlas.HIGHLIGHTED -> 1;
+            default -> 0;
+        };
+    }
+}
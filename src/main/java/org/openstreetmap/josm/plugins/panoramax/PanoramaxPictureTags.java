@@ -0,0 +1,87 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.io.StringReader;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+import org.openstreetmap.josm.data.osm.Tagged;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxTimestamps;
+import org.openstreetmap.josm.tools.Logging;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonString;
+
+/**
+ * The decoded tags of a picture in a vector tile. These are parsed once when the tile is loaded, so that painting
+ * and selection do not need to parse tag strings.
+ * @param id The picture id
+ * @param sequence The first sequence of the picture
+ * @param heading The heading in degrees, or {@link Double#NaN}
+ * @param timestamp The capture time in milliseconds since the epoch, or {@link PanoramaxTimestamps#NONE}
+ */
+record PanoramaxPictureTags(@Nullable String id, @Nullable String sequence, double heading, long timestamp) {
+    /**
+     * Decode the tags of a picture
+     * @param picture The picture primitive
+     * @return The decoded tags
+     */
+    @Nonnull
+    static PanoramaxPictureTags of(@Nonnull Tagged picture) {
+        return new PanoramaxPictureTags(picture.get("id"), parseSequence(picture.get("sequences")),
+                parseHeading(picture.get("heading")), parseTimestamp(picture.get("ts")));
+    }
+
+    /**
+     * Parse the first sequence from the sequence tag
+     * @param sequences The JSON array of sequence ids
+     * @return The first sequence id, or {@code null}
+     */
+    private static String parseSequence(String sequences) {
+        if (sequences != null) {
+            try (JsonReader reader = Json.createReader(new StringReader(sequences))) {
+                final JsonArray array = reader.readArray();
+                for (int i = 0; i < array.size(); i++) {
+                    if (array.get(i) instanceof JsonString sequence) {
+                        return sequence.getString();
+                    }
+                }
+            } catch (JsonException e) {
+                Logging.error(e);
+            }
+        }
+        return null;
+    }
+
+    private static double parseHeading(String heading) {
+        if (heading != null) {
+            try {
+                return Double.parseDouble(heading);
+            } catch (NumberFormatException nfe) {
+                Logging.error(nfe);
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static long parseTimestamp(String timestamp) {
+        if (timestamp != null) {
+            try {
+                return DateTimeFormatter.ISO_DATE_TIME.parse(timestamp, Instant::from).toEpochMilli();
+            } catch (DateTimeException e) {
+                Logging.trace(e);
+            }
+        }
+        return PanoramaxTimestamps.NONE;
+    }
+}
@@ -48,6 +48,70 @@ public final class PanoramaxPreferences {
         return Config.getPref().getInt("panoramax.map.max.zoom", 15); // Higher z levels did not return data.
     }
 
+    public static int getSequencePageSize() {
+        return Config.getPref().getInt("panoramax.api.page.size", 100);
+    }
+
+    public static int getSequenceWindow() {
+        // The page with the current picture, and one on either side of it
+        return Math.max(1, Config.getPref().getInt("panoramax.sequence.window", 3));
+    }
+
+    public static boolean isProgressiveLoading() {
+        // Show the thumbnail while the full size image downloads
+        return Config.getPref().getBoolean("panoramax.image.progressive", true);
+    }
+
+    public static int getPrefetchAhead() {
+        return Math.max(0, Config.getPref().getInt("panoramax.prefetch.ahead", 3));
+    }
+
+    public static int getPrefetchBehind() {
+        return Math.max(0, Config.getPref().getInt("panoramax.prefetch.behind", 1));
+    }
+
+    public static int getPrefetchThreads() {
+        // Don't flood the server
+        return Math.max(1, Config.getPref().getInt("panoramax.prefetch.threads", 2));
+    }
+
+    public static long getDecodedImageCacheSize() {
+        // Decoded images are width * height * bytes per pixel; a 5760x2880 panorama is ~64 MB
+        return Config.getPref().getInt("panoramax.cache.decoded.mb", 256) * 1024L * 1024L;
+    }
+
+    public static boolean isMarkerClustering() {
+        // Draw one marker per screen cell when the markers would overlap
+        return Config.getPref().getBoolean("panoramax.image.cluster", true);
+    }
+
+    public static int getClusterMaxZoom() {
+        // Clustering starts when markers are first drawn (zoom 13)
+        return Config.getPref().getInt("panoramax.image.cluster.max.zoom", 15);
+    }
+
+    public static int getClusterCellSize() {
+        return Math.max(getImageSize(), Config.getPref().getInt("panoramax.image.cluster.cell", 24));
+    }
+
+    public static boolean isClusterBadge() {
+        return Config.getPref().getBoolean("panoramax.image.cluster.badge", true);
+    }
+
+    public static String getHttpTransport() {
+        // "josm" uses the JOSM HTTP client, "pooled" shares HTTP/2 connections (see PooledHttpTransport for caveats)
+        return Config.getPref().get("panoramax.http.transport", "josm");
+    }
+
+    public static int getHttpMaxRequestsPerHost() {
+        return Config.getPref().getInt("panoramax.http.max.requests.per.host", 6);
+    }
+
+    public static boolean isAsyncRendering() {
+        // Draw the layer on a background thread; the EDT only copies the last finished frame
+        return Config.getPref().getBoolean("panoramax.render.async", false);
+    }
+
     public static double getMaxWaitTime() {
         return Config.getPref().getInt("panoramax.download.backoff", 600 /* 10 minutes */);
     }
@@ -0,0 +1,92 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxImage;
+import org.openstreetmap.josm.tools.Utils;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Prefetch the pictures around the picture the viewer is showing. Fetches are queued nearest first, run on a small
+ * number of threads, and fetches that have not started are cancelled when they fall outside the window.
+ */
+final class PanoramaxPrefetcher {
+    private static final PanoramaxPrefetcher INSTANCE = new PanoramaxPrefetcher();
+
+    private final ThreadPoolExecutor executor;
+    /** Picture id to fetch. Finished fetches, and fetches that leave the window, are dropped on the next move. */
+    private final Map<String, Future<?>> pending = new HashMap<>();
+
+    private PanoramaxPrefetcher() {
+        final int threads = PanoramaxPreferences.getPrefetchThreads();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                Utils.newThreadFactory("panoramax-prefetch-%d", Thread.MIN_PRIORITY));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the prefetcher
+     * @return The prefetcher
+     */
+    static PanoramaxPrefetcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Move the cursor to a picture. Pictures in the window around the cursor are queued, and queued pictures that
+     * are no longer in the window are cancelled.
+     * @param api The api to use
+     * @param cursor The picture the viewer is showing
+     * @param width The target width, or a non-positive value for the best available asset
+     */
+    void moveTo(@Nonnull String api, @Nonnull PanoramaxImage cursor, int width) {
+        final PanoramaxSequence sequence = PanoramaxApi.getSequence(api, cursor.collection());
+        if (sequence == null) {
+            return;
+        }
+        // Only ids are compared, so pictures are only created for the fetches that are queued
+        final Set<String> ids = new LinkedHashSet<>(sequence.getLoadedNeighbours(cursor.id(),
+                PanoramaxPreferences.getPrefetchBehind(), PanoramaxPreferences.getPrefetchAhead()));
+        synchronized (this.pending) {
+            for (Iterator<Map.Entry<String, Future<?>>> iterator = this.pending.entrySet().iterator(); iterator
+                    .hasNext();) {
+                final Map.Entry<String, Future<?>> entry = iterator.next();
+                if (entry.getValue().isDone()) {
+                    // Finished fetches are queued again, so that failed downloads are retried. Pictures that were
+                    // downloaded are found in the cache without another request.
+                    iterator.remove();
+                } else if (!ids.contains(entry.getKey())) {
+                    // Don't interrupt running fetches; another caller may be waiting on the same download.
+                    entry.getValue().cancel(false);
+                    iterator.remove();
+                }
+            }
+            this.executor.purge();
+            for (String id : ids) {
+                final PanoramaxImage image = this.pending.containsKey(id) ? null : sequence.getLoaded(id);
+                if (image != null) {
+                    this.pending.put(id, this.executor.submit(() -> fetch(api, image, width)));
+                }
+            }
+        }
+    }
+
+    private static void fetch(String api, PanoramaxImage image, int width) {
+        // Only download; the picture is decoded when the viewer gets to it
+        PanoramaxApi.prefetchImage(api, image, width);
+    }
+}
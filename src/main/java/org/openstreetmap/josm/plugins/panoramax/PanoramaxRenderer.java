@@ -0,0 +1,225 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * Render the layer overlay into an offscreen image on a background thread. The EDT only draws the last finished
+ * frame, translated and scaled to the current view, until a frame for the current view is ready.
+ */
+final class PanoramaxRenderer {
+    /**
+     * Everything needed to render a frame. This is collected on the EDT, so that rendering does not read any EDT
+     * state.
+     * @param east The east of the top left corner
+     * @param north The north of the top left corner
+     * @param scale The east/north units per pixel
+     * @param width The width in pixels
+     * @param height The height in pixels
+     * @param pixelScale The device pixels per pixel, for HiDPI screens
+     * @param zoomLevel The layer zoom level
+     * @param dataZoom The zoom level of the tiles to draw
+     * @param projection The projection of {@code east} and {@code north}
+     * @param bounds The lat/lon bounds of the view
+     * @param selectedIds The unique ids of the selected pictures
+     * @param highlightedIds The unique ids of the highlighted pictures
+     * @param atlas The marker sprites
+     * @param sequenceColor The sequence color
+     * @param clustered {@code true} if markers should be clustered
+     * @param cellSize The cluster cell size
+     * @param badges {@code true} if clusters should show their size
+     * @param generation The data generation; this changes when the tiles or the selection change
+     */
+    record Viewport(double east, double north, double scale, int width, int height, double pixelScale,
+                    int zoomLevel, int dataZoom, Projection projection, Bounds bounds, long[] selectedIds,
+                    long[] highlightedIds, PanoramaxMarkerAtlas atlas, Color sequenceColor, boolean clustered,
+                    int cellSize, boolean badges, int generation) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Viewport other && this.east == other.east && this.north == other.north
+                    && this.scale == other.scale && this.width == other.width && this.height == other.height
+                    && this.pixelScale == other.pixelScale && this.zoomLevel == other.zoomLevel
+                    && this.dataZoom == other.dataZoom && this.projection == other.projection
+                    && Arrays.equals(this.selectedIds, other.selectedIds)
+                    && Arrays.equals(this.highlightedIds, other.highlightedIds) && this.atlas == other.atlas
+                    && Objects.equals(this.sequenceColor, other.sequenceColor) && this.clustered == other.clustered
+                    && this.cellSize == other.cellSize && this.badges == other.badges
+                    && this.generation == other.generation;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.east, this.north, this.scale, this.width, this.height, this.zoomLevel,
+                    this.generation);
+        }
+
+        boolean isSamePosition(Viewport other) {
+            return this.east == other.east && this.north == other.north && this.scale == other.scale
+                    && this.projection == other.projection;
+        }
+    }
+
+    /**
+     * Draw the overlay for a view
+     */
+    @FunctionalInterface
+    interface Painter {
+        /**
+         * Draw the overlay
+         * @param g The graphics to draw on, in screen pixels
+         * @param viewport The view to draw
+         * @param grid The cluster grid to use
+         * @param hits The hit grid to fill with the drawn markers
+         */
+        void render(Graphics2D g, Viewport viewport, PanoramaxMarkerGrid grid, PanoramaxHitGrid hits);
+    }
+
+    private record Frame(BufferedImage image, Viewport viewport, PanoramaxMarkerGrid grid, PanoramaxHitGrid hits) {
+    }
+
+    private final ExecutorService executor = Executors
+            .newSingleThreadExecutor(Utils.newThreadFactory("panoramax-render-%d", Thread.NORM_PRIORITY));
+    private final Painter painter;
+    private final Runnable onFrame;
+    private volatile Frame frame;
+    /** The latest requested view. Guarded by {@code this}. */
+    private Viewport requested;
+    /** {@code true} if a render task is queued or running. Guarded by {@code this}. */
+    private boolean running;
+
+    /**
+     * Create a new renderer
+     * @param painter The painter for the overlay
+     * @param onFrame Called from the render thread when a new frame is ready
+     */
+    PanoramaxRenderer(@Nonnull Painter painter, @Nonnull Runnable onFrame) {
+        this.painter = painter;
+        this.onFrame = onFrame;
+    }
+
+    /**
+     * Request a frame for a view. Requests are coalesced, so only the latest view is rendered.
+     * @param viewport The view
+     */
+    synchronized void request(@Nonnull Viewport viewport) {
+        this.requested = viewport;
+        if (!this.running) {
+            final Frame current = this.frame;
+            if (current != null && viewport.equals(current.viewport())) {
+                return;
+            }
+            this.running = true;
+            this.executor.execute(this::run);
+        }
+    }
+
+    /**
+     * Draw the last finished frame, translated and scaled to a view. Nothing is drawn if the frame is in another
+     * projection.
+     * @param g The graphics to draw on
+     * @param viewport The current view
+     */
+    void draw(@Nonnull Graphics2D g, @Nonnull Viewport viewport) {
+        final Frame current = this.frame;
+        if (current == null || current.viewport().projection() != viewport.projection()) {
+            // A frame in another projection can't be moved into place
+            return;
+        }
+        final Viewport rendered = current.viewport();
+        final double factor = rendered.scale() / viewport.scale();
+        final int x = (int) Math.round((rendered.east() - viewport.east()) / viewport.scale());
+        final int y = (int) Math.round((viewport.north() - rendered.north()) / viewport.scale());
+        g.drawImage(current.image(), x, y, (int) Math.round(rendered.width() * factor),
+                (int) Math.round(rendered.height() * factor), null);
+    }
+
+    /**
+     * Get the cluster grid of the last frame
+     * @param viewport The current view
+     * @return The grid, or {@code null} if the last frame is not at the current position or was not clustered
+     */
+    @Nullable
+    PanoramaxMarkerGrid getGrid(@Nonnull Viewport viewport) {
+        final Frame current = this.frame;
+        return current != null && current.viewport().clustered() && current.viewport().isSamePosition(viewport)
+                ? current.grid() : null;
+    }
+
+    /**
+     * Get the hit grid of the last frame
+     * @param viewport The current view
+     * @return The grid, or {@code null} if the last frame is not at the current position
+     */
+    @Nullable
+    PanoramaxHitGrid getHitGrid(@Nonnull Viewport viewport) {
+        final Frame current = this.frame;
+        return current != null && current.viewport().isSamePosition(viewport) ? current.hits() : null;
+    }
+
+    /**
+     * Stop the render thread
+     */
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    private void run() {
+        while (true) {
+            final Viewport viewport;
+            synchronized (this) {
+                viewport = this.requested;
+                final Frame current = this.frame;
+                if (current != null && viewport.equals(current.viewport())) {
+                    this.running = false;
+                    return;
+                }
+            }
+            try {
+                this.frame = render(viewport);
+            } catch (RuntimeException e) {
+                // Don't keep retrying the same view
+                Logging.error(e);
+                synchronized (this) {
+                    this.running = false;
+                }
+                return;
+            }
+            this.onFrame.run();
+        }
+    }
+
+    private Frame render(Viewport viewport) {
+        final BufferedImage image = new BufferedImage(
+                Math.max(1, (int) Math.ceil(viewport.width() * viewport.pixelScale())),
+                Math.max(1, (int) Math.ceil(viewport.height() * viewport.pixelScale())), BufferedImage.TYPE_INT_ARGB);
+        // Each frame gets its own grids, since the EDT reads the grids of the last frame for the mouse
+        final PanoramaxMarkerGrid grid = new PanoramaxMarkerGrid();
+        final PanoramaxHitGrid hits = new PanoramaxHitGrid();
+        final Graphics2D g = image.createGraphics();
+        try {
+            g.scale(viewport.pixelScale(), viewport.pixelScale());
+            this.painter.render(g, viewport, grid, hits);
+        } finally {
+            g.dispose();
+        }
+        return new Frame(image, viewport, grid, hits);
+    }
+}
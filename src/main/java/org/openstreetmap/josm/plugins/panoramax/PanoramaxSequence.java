@@ -0,0 +1,414 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxCollection;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxImage;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxLink;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * A lazily paginated sequence of pictures. Only the page with the requested picture is loaded; neighbouring pages
+ * are loaded as the sequence is walked, and pages that are far from the last requested picture are dropped.
+ * <p>
+ * Pages are never loaded while holding the monitor, so a slow page does not block other readers.
+ */
+public final class PanoramaxSequence {
+    private static final String NEXT = "next";
+    private static final String PREV = "prev";
+
+    private final String api;
+    private final String id;
+    /** Contiguous pages, in sequence order */
+    private final List<PanoramaxCollection> pages = new ArrayList<>();
+    /** The first page of the sequence, if it has been loaded */
+    private PanoramaxCollection first;
+    /** The last page of the sequence, if it has been loaded */
+    private PanoramaxCollection last;
+    /** The index of the page with the last requested picture */
+    private int cursor;
+    /** The pages whose neighbour is being loaded in the background. Guarded by {@code this}. */
+    private final Set<PanoramaxCollection> prefetching = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    PanoramaxSequence(@Nonnull String api, @Nonnull String id) {
+        this.api = api;
+        this.id = id;
+    }
+
+    /**
+     * Get the id of the sequence
+     * @return The sequence id
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * Get a picture in this sequence
+     * @param imageId The picture id
+     * @return The picture, or {@code null} if it could not be loaded
+     */
+    @Nullable
+    public PanoramaxImage get(@Nonnull String imageId) {
+        if (!locate(imageId)) {
+            return null;
+        }
+        synchronized (this) {
+            final int page = indexOfImage(imageId);
+            if (page < 0) {
+                // Another thread jumped somewhere else in the sequence
+                return null;
+            }
+            final PanoramaxCollection collection = this.pages.get(page);
+            moveCursor(page);
+            return collection.get(collection.indexOf(imageId));
+        }
+    }
+
+    /**
+     * Get the picture after the specified picture
+     * @param image The current picture
+     * @return The next picture, or {@code null} if this is the last picture
+     */
+    @Nullable
+    public PanoramaxImage getNext(@Nonnull PanoramaxImage image) {
+        return step(image, NEXT);
+    }
+
+    /**
+     * Get the picture before the specified picture
+     * @param image The current picture
+     * @return The previous picture, or {@code null} if this is the first picture
+     */
+    @Nullable
+    public PanoramaxImage getPrevious(@Nonnull PanoramaxImage image) {
+        return step(image, PREV);
+    }
+
+    /**
+     * Get the ids of the already loaded pictures around a picture. This never loads pages or moves the window.
+     * @param imageId The picture in the middle
+     * @param behind The maximum number of pictures to get before the picture
+     * @param ahead The maximum number of pictures to get after the picture
+     * @return The picture ids, nearest first, alternating between ahead and behind
+     */
+    public synchronized List<String> getLoadedNeighbours(@Nonnull String imageId, int behind, int ahead) {
+        int offset = -1;
+        int total = 0;
+        for (PanoramaxCollection page : this.pages) {
+            final int index = page.indexOf(imageId);
+            if (index >= 0) {
+                offset = total + index;
+            }
+            total += page.size();
+        }
+        if (offset < 0) {
+            return Collections.emptyList();
+        }
+        final List<String> neighbours = new ArrayList<>(behind + ahead);
+        for (int distance = 1; distance <= Math.max(behind, ahead); distance++) {
+            if (distance <= ahead && offset + distance < total) {
+                neighbours.add(getLoadedId(offset + distance));
+            }
+            if (distance <= behind && offset - distance >= 0) {
+                neighbours.add(getLoadedId(offset - distance));
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * Get an already loaded picture. This never loads pages or moves the window.
+     * @param imageId The picture id
+     * @return The picture, or {@code null} if it is not in the window
+     */
+    @Nullable
+    public synchronized PanoramaxImage getLoaded(@Nonnull String imageId) {
+        for (PanoramaxCollection page : this.pages) {
+            final int index = page.indexOf(imageId);
+            if (index >= 0) {
+                return page.get(index);
+            }
+        }
+        return null;
+    }
+
+    private String getLoadedId(int offset) {
+        int remaining = offset;
+        for (PanoramaxCollection page : this.pages) {
+            if (remaining < page.size()) {
+                return page.getId(remaining);
+            }
+            remaining -= page.size();
+        }
+        throw new IndexOutOfBoundsException(offset);
+    }
+
+    /**
+     * Get the first picture in the sequence. This does not move the window of loaded pages.
+     * @return The first picture
+     */
+    @Nullable
+    public PanoramaxImage getFirst() {
+        final PanoramaxCollection page = getEdge(PREV, "first");
+        return page == null || page.isEmpty() ? null : page.getFirst();
+    }
+
+    /**
+     * Get the last picture in the sequence. This does not move the window of loaded pages.
+     * @return The last picture
+     */
+    @Nullable
+    public PanoramaxImage getLast() {
+        final PanoramaxCollection page = getEdge(NEXT, "last");
+        return page == null || page.isEmpty() ? null : page.getLast();
+    }
+
+    /**
+     * Step from a picture to its neighbour. Pages are loaded outside of the monitor, so a slow page does not block
+     * other readers.
+     * @param image The current picture
+     * @param rel {@link #NEXT} or {@link #PREV}
+     * @return The neighbouring picture, or {@code null} if there is none
+     */
+    private PanoramaxImage step(PanoramaxImage image, String rel) {
+        final boolean forward = NEXT.equals(rel);
+        while (true) {
+            final PanoramaxCollection anchor;
+            synchronized (this) {
+                int page = indexOfImage(image.id());
+                if (page < 0) {
+                    // The window moved away from the picture; find it again below
+                    anchor = null;
+                } else {
+                    PanoramaxCollection collection = this.pages.get(page);
+                    int index = collection.indexOf(image.id()) + (forward ? 1 : -1);
+                    if (index >= 0 && index < collection.size()) {
+                        anchor = null;
+                    } else if (forward && page + 1 < this.pages.size()) {
+                        page++;
+                        collection = this.pages.get(page);
+                        index = 0;
+                        anchor = null;
+                    } else if (!forward && page > 0) {
+                        page--;
+                        collection = this.pages.get(page);
+                        index = collection.size() - 1;
+                        anchor = null;
+                    } else {
+                        anchor = collection;
+                    }
+                    if (anchor == null) {
+                        moveCursor(page);
+                        if (this.cursor == (forward ? this.pages.size() - 1 : 0)) {
+                            // Load the page after this one while the user walks through this one
+                            prefetch(collection, rel);
+                        }
+                        return index >= 0 && index < collection.size() ? collection.get(index) : null;
+                    }
+                }
+            }
+            if (anchor == null) {
+                if (!locate(image.id())) {
+                    return null;
+                }
+                continue;
+            }
+            final PanoramaxCollection loaded = fetch(anchor, rel);
+            if (loaded == null) {
+                return null;
+            }
+            synchronized (this) {
+                // If the window changed while loading, the next pass works with the new window
+                attach(anchor, rel, loaded);
+            }
+        }
+    }
+
+    /**
+     * Make sure that the page with a picture is in the window, loading it if needed
+     * @param imageId The picture to look for
+     * @return {@code true} if the page is in the window
+     */
+    private boolean locate(String imageId) {
+        PanoramaxCollection page;
+        synchronized (this) {
+            if (indexOfImage(imageId) >= 0) {
+                return true;
+            }
+            if (this.first != null && this.first.indexOf(imageId) >= 0) {
+                page = this.first;
+            } else if (this.last != null && this.last.indexOf(imageId) >= 0) {
+                page = this.last;
+            } else {
+                page = null;
+            }
+        }
+        if (page == null) {
+            page = PanoramaxApi.getCollectionPage(this.api, this.id, imageId);
+        }
+        if (page == null || page.indexOf(imageId) < 0) {
+            return false;
+        }
+        synchronized (this) {
+            if (indexOfImage(imageId) < 0) {
+                // We jumped somewhere else in the sequence; the old pages are no longer contiguous with the new one.
+                this.pages.clear();
+                this.pages.add(page);
+                this.cursor = 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Load a neighbouring page. This must not be called while holding the monitor.
+     * @param anchor The page at the edge of the window
+     * @param rel The relation to load
+     * @return The page, or {@code null} if there is no such page or it could not be loaded
+     */
+    @Nullable
+    private PanoramaxCollection fetch(PanoramaxCollection anchor, String rel) {
+        final PanoramaxLink link = anchor.getLink(rel);
+        return link == null ? null : PanoramaxApi.getCollectionPage(this.api, this.id, link.href());
+    }
+
+    /**
+     * Load a neighbouring page in the background, unless it is already being loaded
+     * @param anchor The page at the edge of the window
+     * @param rel The relation to load
+     */
+    private void prefetch(PanoramaxCollection anchor, String rel) {
+        if (anchor.getLink(rel) == null || !this.prefetching.add(anchor)) {
+            return;
+        }
+        MainApplication.worker.execute(() -> {
+            try {
+                final PanoramaxCollection loaded = fetch(anchor, rel);
+                if (loaded != null) {
+                    synchronized (this) {
+                        if (attach(anchor, rel, loaded)) {
+                            trim();
+                        }
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    this.prefetching.remove(anchor);
+                }
+            }
+        });
+    }
+
+    /**
+     * Attach a page to the window. This does not {@link #trim()} the window, since callers may hold page indexes.
+     * @param anchor The page the new page was loaded from
+     * @param rel The relation of the new page to the anchor
+     * @param loaded The new page
+     * @return {@code true} if the page was attached
+     */
+    private boolean attach(PanoramaxCollection anchor, String rel, PanoramaxCollection loaded) {
+        final int index = indexOfPage(anchor);
+        if (NEXT.equals(rel) && index >= 0 && index == this.pages.size() - 1) {
+            this.pages.add(loaded);
+            return true;
+        } else if (PREV.equals(rel) && index == 0) {
+            this.pages.addFirst(loaded);
+            this.cursor++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the first or last page of the sequence
+     * @param rel The relation a page at the edge does not have
+     * @param edge The relation to load the edge from
+     * @return The page, or {@code null} if it could not be loaded
+     */
+    @Nullable
+    private PanoramaxCollection getEdge(String rel, String edge) {
+        final boolean first = PREV.equals(rel);
+        final PanoramaxLink link;
+        synchronized (this) {
+            PanoramaxCollection page = first ? this.first : this.last;
+            if (page == null && !this.pages.isEmpty()) {
+                final PanoramaxCollection candidate = first ? this.pages.getFirst() : this.pages.getLast();
+                if (candidate.getLink(rel) == null) {
+                    page = candidate;
+                }
+            }
+            if (page != null || this.pages.isEmpty()) {
+                setEdge(first, page);
+                return page;
+            }
+            link = this.pages.get(this.cursor).getLink(edge);
+        }
+        final PanoramaxCollection loaded = link == null ? null
+                : PanoramaxApi.getCollectionPage(this.api, this.id, link.href());
+        synchronized (this) {
+            if (loaded != null) {
+                setEdge(first, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    private void setEdge(boolean first, PanoramaxCollection page) {
+        if (first) {
+            this.first = page;
+        } else {
+            this.last = page;
+        }
+    }
+
+    private void moveCursor(int page) {
+        this.cursor = page;
+        trim();
+    }
+
+    /**
+     * Drop the pages that are furthest from the cursor until the window fits
+     */
+    private void trim() {
+        final int window = PanoramaxPreferences.getSequenceWindow();
+        while (this.pages.size() > window) {
+            if (this.cursor > this.pages.size() - 1 - this.cursor) {
+                this.pages.removeFirst();
+                this.cursor--;
+            } else {
+                this.pages.removeLast();
+            }
+        }
+    }
+
+    private int indexOfImage(String imageId) {
+        for (int i = 0; i < this.pages.size(); i++) {
+            if (this.pages.get(i).indexOf(imageId) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfPage(PanoramaxCollection page) {
+        for (int i = 0; i < this.pages.size(); i++) {
+            if (this.pages.get(i) == page) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.imagery.vectortile.mapbox.MVTTile;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.data.vector.VectorNode;
+import org.openstreetmap.josm.data.vector.VectorPrimitive;
+import org.openstreetmap.josm.data.vector.VectorWay;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * The projected geometry of a single vector tile. Sequences and pictures are projected once, when the tile is loaded
+ * or the projection changes, so painting only needs to translate and scale.
+ */
+final class PanoramaxTileGeometry {
+    private final MVTTile tile;
+    private final Projection projection;
+    /** The sequence lines, in east/north */
+    private final Path2D.Double sequences;
+    /** The picture positions, as interleaved east/north pairs */
+    private final double[] markers;
+    /** The picture nodes, in the same order as {@link #markers} */
+    private final VectorNode[] nodes;
+    /** The number of valid entries in {@link #nodes} */
+    private final int markerCount;
+    /** The decoded picture tags, in the same order as {@link #markers} */
+    private final PanoramaxPictureTags[] tags;
+    private final double minEast;
+    private final double minNorth;
+    private final double maxEast;
+    private final double maxNorth;
+    /** The lat/lon bounds, so that tiles out of view can be skipped without projecting them */
+    private final double[] latLonBounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+        Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+    private PanoramaxTileGeometry(MVTTile tile, Projection projection) {
+        this.tile = tile;
+        this.projection = projection;
+        this.sequences = new Path2D.Double();
+        final List<VectorNode> pictures = new ArrayList<>();
+        final double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.NEGATIVE_INFINITY};
+        for (VectorPrimitive primitive : tile.getData().getAllPrimitives()) {
+            if (primitive instanceof VectorWay way) {
+                boolean connected = false;
+                for (VectorNode node : way.getNodes()) {
+                    final EastNorth eastNorth = projection.latlon2eastNorth(node);
+                    if (eastNorth == null || !eastNorth.isValid()) {
+                        connected = false;
+                        continue;
+                    }
+                    if (connected) {
+                        this.sequences.lineTo(eastNorth.east(), eastNorth.north());
+                    } else {
+                        this.sequences.moveTo(eastNorth.east(), eastNorth.north());
+                        connected = true;
+                    }
+                    extend(bounds, eastNorth);
+                    extend(this.latLonBounds, node.lon(), node.lat());
+                }
+            } else if (primitive instanceof VectorNode node && node.isTagged()) {
+                pictures.add(node);
+            }
+        }
+        this.nodes = new VectorNode[pictures.size()];
+        this.markers = new double[2 * pictures.size()];
+        this.tags = new PanoramaxPictureTags[pictures.size()];
+        int count = 0;
+        for (VectorNode node : pictures) {
+            final EastNorth eastNorth = projection.latlon2eastNorth(node);
+            if (eastNorth != null && eastNorth.isValid()) {
+                this.nodes[count] = node;
+                this.markers[2 * count] = eastNorth.east();
+                this.markers[2 * count + 1] = eastNorth.north();
+                this.tags[count] = PanoramaxPictureTags.of(node);
+                extend(bounds, eastNorth);
+                extend(this.latLonBounds, node.lon(), node.lat());
+                count++;
+            }
+        }
+        this.markerCount = count;
+        this.minEast = bounds[0];
+        this.minNorth = bounds[1];
+        this.maxEast = bounds[2];
+        this.maxNorth = bounds[3];
+    }
+
+    /**
+     * Project a tile
+     * @param tile The tile to project
+     * @param projection The projection to use
+     * @return The projected geometry
+     */
+    @Nonnull
+    static PanoramaxTileGeometry of(@Nonnull MVTTile tile, @Nonnull Projection projection) {
+        return new PanoramaxTileGeometry(tile, projection);
+    }
+
+    /**
+     * Get this geometry in a projection
+     * @param newProjection The projection
+     * @return This geometry if it is already in the projection, otherwise the reprojected geometry
+     */
+    @Nonnull
+    PanoramaxTileGeometry in(@Nonnull Projection newProjection) {
+        return this.projection == newProjection ? this : new PanoramaxTileGeometry(this.tile, newProjection);
+    }
+
+    MVTTile getTile() {
+        return this.tile;
+    }
+
+    int getZoom() {
+        return this.tile.getZoom();
+    }
+
+    /**
+     * Check if this tile may be in view. This does not depend on the projection of the geometry.
+     * @param bounds The bounds of the view
+     * @return {@code true} if the tile content intersects the bounds
+     */
+    boolean intersects(Bounds bounds) {
+        return this.latLonBounds[2] >= bounds.getMinLon() && this.latLonBounds[0] <= bounds.getMaxLon()
+                && this.latLonBounds[3] >= bounds.getMinLat() && this.latLonBounds[1] <= bounds.getMaxLat();
+    }
+
+    boolean intersects(double east1, double north1, double east2, double north2) {
+        return this.maxEast >= Math.min(east1, east2) && this.minEast <= Math.max(east1, east2)
+                && this.maxNorth >= Math.min(north1, north2) && this.minNorth <= Math.max(north1, north2);
+    }
+
+    Path2D getSequences() {
+        return this.sequences;
+    }
+
+    int getMarkerCount() {
+        return this.markerCount;
+    }
+
+    double getEast(int marker) {
+        return this.markers[2 * marker];
+    }
+
+    double getNorth(int marker) {
+        return this.markers[2 * marker + 1];
+    }
+
+    double getHeading(int marker) {
+        return this.tags[marker].heading();
+    }
+
+    PanoramaxPictureTags getTags(int marker) {
+        return this.tags[marker];
+    }
+
+    VectorNode getNode(int marker) {
+        return this.nodes[marker];
+    }
+
+    private static void extend(double[] bounds, EastNorth eastNorth) {
+        extend(bounds, eastNorth.east(), eastNorth.north());
+    }
+
+    private static void extend(double[] bounds, double x, double y) {
+        bounds[0] = Math.min(bounds[0], x);
+        bounds[1] = Math.min(bounds[1], y);
+        bounds[2] = Math.max(bounds[2], x);
+        bounds[3] = Math.max(bounds[3], y);
+    }
+}
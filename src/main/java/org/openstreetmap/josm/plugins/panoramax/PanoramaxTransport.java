@@ -0,0 +1,56 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * The HTTP transport used for API and asset requests
+ */
+interface PanoramaxTransport {
+    /**
+     * Get the transport selected in the preferences
+     * @return The transport
+     */
+    @Nonnull
+    static PanoramaxTransport get() {
+        return "josm".equals(PanoramaxPreferences.getHttpTransport()) ? JosmHttpTransport.INSTANCE
+                : PooledHttpTransport.getInstance();
+    }
+
+    /**
+     * Get a resource
+     * @param uri The resource to get
+     * @return The response body. This must be closed, so that the connection can be reused.
+     * @throws IOException if the request failed or the server returned an error
+     */
+    @Nonnull
+    InputStream get(@Nonnull URI uri) throws IOException;
+
+    /**
+     * Check a resource without getting it
+     * @param uri The resource to check
+     * @return The response code
+     * @throws IOException if the request failed
+     */
+    int head(@Nonnull URI uri) throws IOException;
+
+    /**
+     * Check the response code of a {@link #get(URI)} request
+     * @param uri The resource
+     * @param responseCode The response code
+     * @throws IOException if the response code is an error
+     */
+    static void checkResponse(URI uri, int responseCode) throws IOException {
+        if (responseCode >= 400) {
+            throw new IOException("HTTP " + responseCode + " for " + uri);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.Authenticator;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import org.openstreetmap.josm.data.Version;
+import org.openstreetmap.josm.io.NetworkManager;
+import org.openstreetmap.josm.spi.preferences.Config;
+
+/**
+ * A transport using a single shared {@link HttpClient}. The client keeps connections open between requests and
+ * uses HTTP/2 where the server supports it, so the API, the picture prefetcher, and the viewer all share warm
+ * connections. The number of concurrent requests per host is limited, since HTTP/2 sends them all over one
+ * connection.
+ * <p>
+ * Like the JOSM client, this honours offline mode, asks for gzip responses, and uses the JOSM proxy settings and
+ * authenticator. Unlike the JOSM client, the JDK client does not do basic authentication when tunnelling through a
+ * proxy (see {@code jdk.http.auth.tunneling.disabledSchemes}), so this is not the default transport.
+ */
+final class PooledHttpTransport implements PanoramaxTransport {
+    /** Lazily create the client, since it starts its own threads */
+    private static final class Holder {
+        static final PooledHttpTransport INSTANCE = new PooledHttpTransport(
+                PanoramaxPreferences.getHttpMaxRequestsPerHost());
+    }
+
+    private final HttpClient client;
+    private final int maxRequestsPerHost;
+    /** The permits for concurrent requests, by scheme and authority */
+    private final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+    PooledHttpTransport(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = Math.max(1, maxRequestsPerHost);
+        final HttpClient.Builder builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(Config.getPref().getInt("socket.timeout.connect", 15)));
+        // JOSM installs its proxy settings as the default proxy selector
+        final ProxySelector proxySelector = ProxySelector.getDefault();
+        if (proxySelector != null) {
+            builder.proxy(proxySelector);
+        }
+        // JOSM installs its authenticator as the default, so proxy and server credentials come from the preferences
+        final Authenticator authenticator = Authenticator.getDefault();
+        if (authenticator != null) {
+            builder.authenticator(authenticator);
+        }
+        this.client = builder.build();
+    }
+
+    static PooledHttpTransport getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    @Override
+    public InputStream get(URI uri) throws IOException {
+        final Semaphore permits = acquire(uri);
+        try {
+            final HttpResponse<InputStream> response = send(request(uri).GET().build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            InputStream body = response.body();
+            try {
+                PanoramaxTransport.checkResponse(uri, response.statusCode());
+                if ("gzip".equalsIgnoreCase(response.headers().firstValue("Content-Encoding").orElse(null))) {
+                    body = new GZIPInputStream(body);
+                }
+            } catch (IOException e) {
+                body.close();
+                throw e;
+            }
+            return new PermitInputStream(body, permits);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public int head(URI uri) throws IOException {
+        final Semaphore permits = acquire(uri);
+        try {
+            return send(request(uri).method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+                    HttpResponse.BodyHandlers.discarding()).statusCode();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Get the number of requests that can still be started for a host
+     * @param uri A resource on the host
+     * @return The number of free permits
+     */
+    int getAvailablePermits(URI uri) {
+        final Semaphore permits = this.hosts.get(host(uri));
+        return permits == null ? this.maxRequestsPerHost : permits.availablePermits();
+    }
+
+    private static HttpRequest.Builder request(URI uri) {
+        return HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(Config.getPref().getInt("socket.timeout.read", 30)))
+                .header("User-Agent", Version.getInstance().getFullAgentString())
+                .header("Accept-Encoding", "gzip");
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return this.client.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    private static String host(URI uri) {
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+
+    private Semaphore acquire(URI uri) throws IOException {
+        if (NetworkManager.isOffline(uri.toString())) {
+            throw new IOException("Offline: " + uri);
+        }
+        final Semaphore permits = this.hosts.computeIfAbsent(host(uri), host -> new Semaphore(this.maxRequestsPerHost));
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+        return permits;
+    }
+
+    /**
+     * A response body that gives back its request permit when it is closed
+     */
+    private static final class PermitInputStream extends FilterInputStream {
+        private final Semaphore permits;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        PermitInputStream(InputStream in, Semaphore permits) {
+            super(in);
+            this.permits = permits;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (this.closed.compareAndSet(false, true)) {
+                    this.permits.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openstreetmap.josm.tools.JosmRuntimeException;
+
+/**
+ * A binder for a specific record type. All reflection is done once, when the binder is created; after that,
+ * creating a record is a slot lookup per JSON key and a single {@link MethodHandle} invocation.
+ * @param <T> The record type
+ */
+final class RecordBinder<T> {
+    private static final ClassValue<RecordBinder<?>> BINDERS = new ClassValue<>() {
+        @Override
+        protected RecordBinder<?> computeValue(Class<?> type) {
+            return new RecordBinder<>(type);
+        }
+    };
+    /** Returned for keys that do not map to a component */
+    private static final int NO_SLOT = -1;
+
+    private final Class<T> type;
+    private final String[] names;
+    private final Class<?>[] types;
+    private final MethodHandle constructor;
+    /**
+     * JSON key to component slot. This is seeded with the component names, and grows with the raw JSON keys that
+     * map to a component. Keys without a component are not kept, since servers can send arbitrary EXIF keys.
+     */
+    private final Map<String, Integer> slots;
+
+    private RecordBinder(Class<T> type) {
+        if (!type.isRecord()) {
+            throw new IllegalArgumentException("Specified class must be a record: " + type.getCanonicalName());
+        }
+        this.type = type;
+        final RecordComponent[] components = type.getRecordComponents();
+        this.names = new String[components.length];
+        this.types = new Class<?>[components.length];
+        this.slots = new ConcurrentHashMap<>(components.length * 2);
+        for (int i = 0; i < components.length; i++) {
+            this.names[i] = components[i].getName();
+            this.types[i] = components[i].getType();
+            this.slots.put(this.names[i], i);
+        }
+        try {
+            this.constructor = MethodHandles.publicLookup()
+                    .findConstructor(type, MethodType.methodType(void.class, this.types)).asFixedArity()
+                    .asSpreader(Object[].class, this.types.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new JosmRuntimeException(type.getCanonicalName(), e);
+        }
+    }
+
+    /**
+     * Get the binder for a record class
+     * @param type The record class
+     * @return The binder
+     * @param <T> The record type
+     */
+    @SuppressWarnings("unchecked")
+    static <T> RecordBinder<T> of(Class<T> type) {
+        return (RecordBinder<T>) BINDERS.get(type);
+    }
+
+    /**
+     * Get the number of components in the record
+     * @return The component count
+     */
+    int size() {
+        return this.types.length;
+    }
+
+    /**
+     * Get the type of a component
+     * @param slot The component slot
+     * @return The component type
+     */
+    Class<?> type(int slot) {
+        return this.types[slot];
+    }
+
+    /**
+     * Get the slot for a component
+     * @param name The component name
+     * @return The slot
+     * @throws IllegalArgumentException if the record does not have the component
+     */
+    int componentSlot(String name) {
+        final Integer slot = this.slots.get(name);
+        if (slot == null || !this.names[slot].equals(name)) {
+            throw new IllegalArgumentException(this.type.getCanonicalName() + " has no component named " + name);
+        }
+        return slot;
+    }
+
+    /**
+     * Get the slot for a JSON key
+     * @param key The JSON key
+     * @return The component slot, or {@code -1} if the key has no matching component
+     */
+    int slot(String key) {
+        final Integer slot = this.slots.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        final Integer normalized = this.slots.get(normalize(key));
+        if (normalized == null) {
+            return NO_SLOT;
+        }
+        this.slots.put(key, normalized);
+        return normalized;
+    }
+
+    /**
+     * Create a new record instance
+     * @param args The arguments, in component order
+     * @return The new record
+     */
+    T newInstance(Object[] args) {
+        try {
+            return this.type.cast((Object) this.constructor.invokeExact(args));
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new JosmRuntimeException(this.type.getCanonicalName(), e);
+        }
+    }
+
+    private static String normalize(String key) {
+        return key.replace(".", "");
+    }
+}
@@ -0,0 +1,634 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, versioned binary encoding for collections and pictures. This is used when the caches write them to disk.
+ * <p>
+ * The format is a version byte, a kind byte, a string table, and then the payload. Strings in the payload are varint
+ * indexes into the string table (with {@code 0} meaning {@code null}), so repeated links, providers, and licenses
+ * are only stored once. Coordinates are stored as raw doubles, and EXIF is stored in its {@link PanoramaxLazyExif}
+ * form.
+ * <p>
+ * The same encoding backs the in-memory form of {@link PanoramaxCollection}: the columns that are read often are
+ * kept as primitive arrays, and everything else is kept as encoded bytes against a shared string dictionary.
+ */
+final class PanoramaxCodec {
+    private static final byte VERSION = 6;
+    private static final byte KIND_COLLECTION = 'C';
+    private static final byte KIND_IMAGE = 'I';
+
+    private PanoramaxCodec() {
+        // Hide constructor
+    }
+
+    /**
+     * The serialized form of a collection or a picture
+     */
+    static final class SerializedForm implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final byte[] data;
+
+        SerializedForm(byte[] data) {
+            this.data = data;
+        }
+
+        @Serial
+        private Object readResolve() throws ObjectStreamException {
+            return decode(this.data);
+        }
+    }
+
+    /**
+     * The columns of a collection. Picture {@code i} is encoded in {@code data[offsets[i]..offsets[i + 1]]}, with
+     * string indexes into {@code dictionary}. Ids are indexes into {@code dictionary} too, or {@code -1} for no id.
+     */
+    record Columns(String[] dictionary, int[] ids, double[] lat, double[] lon, short[] heading, long[] timestamps,
+                   byte[] data, int[] offsets) {
+        /**
+         * Get the id of a picture
+         * @param index The index of the picture
+         * @return The picture id
+         */
+        String getId(int index) {
+            final int id = this.ids[index];
+            return id < 0 ? null : this.dictionary[id];
+        }
+    }
+
+    /**
+     * Split pictures into columns
+     * @param images The pictures
+     * @return The columns
+     */
+    static Columns columns(PanoramaxImage[] images) {
+        final Encoder encoder = new Encoder(new String[0]);
+        final int[] ids = new int[images.length];
+        final double[] lat = new double[images.length];
+        final double[] lon = new double[images.length];
+        final short[] heading = new short[images.length];
+        final long[] timestamps = new long[images.length];
+        final int[] offsets = new int[images.length + 1];
+        try {
+            for (int i = 0; i < images.length; i++) {
+                final PanoramaxImage image = images[i];
+                ids[i] = encoder.intern(image.id());
+                lat[i] = image.lat();
+                lon[i] = image.lon();
+                heading[i] = heading(image.properties());
+                timestamps[i] = image.properties() == null || image.properties().timestamps() == null
+                        ? PanoramaxTimestamps.NONE : image.properties().timestamps().datetime();
+                encoder.writeBody(image);
+                offsets[i + 1] = encoder.payload.size();
+            }
+        } catch (IOException e) {
+            // We are only writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return new Columns(encoder.strings.keySet().toArray(String[]::new), ids, lat, lon, heading, timestamps,
+                encoder.payload.toByteArray(), offsets);
+    }
+
+    /**
+     * Create a picture from its columns
+     * @param columns The collection columns
+     * @param index The index of the picture
+     * @return The picture
+     */
+    static PanoramaxImage materialize(Columns columns, int index) {
+        final int offset = columns.offsets()[index];
+        final DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(columns.data(), offset, columns.offsets()[index + 1] - offset));
+        try {
+            return new Decoder(in, columns.dictionary()).readBody(columns.getId(index), columns.lat()[index],
+                    columns.lon()[index]);
+        } catch (IOException e) {
+            // We wrote the data ourselves, so this should never happen
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static short heading(PanoramaxProperties properties) {
+        if (properties == null || properties.view_azimuth() == null) {
+            return PanoramaxCollection.NO_HEADING;
+        }
+        return (short) Math.floorMod(properties.view_azimuth(), 360);
+    }
+
+    /**
+     * Get the serialized form of a collection
+     * @param collection The collection
+     * @return The object to serialize instead of the collection
+     */
+    static SerializedForm serialize(PanoramaxCollection collection) {
+        return new SerializedForm(encode(KIND_COLLECTION, new Encoder(collection.columns().dictionary()),
+                encoder -> encoder.writeCollection(collection.getLinks(), collection.columns())));
+    }
+
+    /**
+     * Get the serialized form of a picture
+     * @param image The picture
+     * @return The object to serialize instead of the picture
+     */
+    static SerializedForm serialize(PanoramaxImage image) {
+        return new SerializedForm(encode(KIND_IMAGE, new Encoder(new String[0]), encoder -> encoder.writeImage(image)));
+    }
+
+    private interface Writer {
+        void write(Encoder encoder) throws IOException;
+    }
+
+    private static byte[] encode(byte kind, Encoder encoder, Writer writer) {
+        try {
+            writer.write(encoder);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(encoder.payload.size() + 1024);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeByte(kind);
+            writeVarInt(out, encoder.strings.size());
+            for (String string : encoder.strings.keySet()) {
+                final byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, utf8.length);
+                out.write(utf8);
+            }
+            encoder.payload.writeTo(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // We are only writing to memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Object decode(byte[] data) throws InvalidObjectException {
+        try {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            final byte version = in.readByte();
+            if (version != VERSION) {
+                throw new InvalidObjectException("Unknown Panoramax cache version: " + version);
+            }
+            final byte kind = in.readByte();
+            final String[] strings = new String[readVarInt(in)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = new String(in.readNBytes(readVarInt(in)), StandardCharsets.UTF_8);
+            }
+            final Decoder decoder = new Decoder(in, strings);
+            return switch (kind) {
+                case KIND_COLLECTION -> decoder.readCollection();
+                case KIND_IMAGE -> decoder.readImage();
+                default -> throw new InvalidObjectException("Unknown Panoramax cache kind: " + kind);
+            };
+        } catch (IOException | RuntimeException e) {
+            final InvalidObjectException exception = new InvalidObjectException(e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    static void writeVarInt(OutputStream out, int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write(remaining);
+    }
+
+    static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new IOException("Unexpected end of data");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static final class Encoder {
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+        private final ByteArrayOutputStream payload = new ByteArrayOutputStream(4096);
+        private final DataOutputStream out = new DataOutputStream(this.payload);
+
+        /**
+         * Create a new encoder
+         * @param dictionary The initial string table. Encoded data that refers to this dictionary stays valid.
+         */
+        Encoder(String[] dictionary) {
+            for (String string : dictionary) {
+                this.strings.put(string, this.strings.size());
+            }
+        }
+
+        void writeCollection(PanoramaxLink[] links, Columns columns) throws IOException {
+            writeLinks(links);
+            writeVarInt(this.out, columns.ids().length);
+            for (int i = 0; i < columns.ids().length; i++) {
+                writeString(columns.getId(i));
+                this.out.writeDouble(columns.lat()[i]);
+                this.out.writeDouble(columns.lon()[i]);
+                this.out.writeShort(columns.heading()[i]);
+                this.out.writeLong(columns.timestamps()[i]);
+                // The pictures were encoded against the same dictionary, so they can be copied as is
+                final int length = columns.offsets()[i + 1] - columns.offsets()[i];
+                writeVarInt(this.out, length);
+                this.out.write(columns.data(), columns.offsets()[i], length);
+            }
+        }
+
+        void writeImage(PanoramaxImage image) throws IOException {
+            writeString(image.id());
+            this.out.writeDouble(image.lat());
+            this.out.writeDouble(image.lon());
+            writeBody(image);
+        }
+
+        void writeBody(PanoramaxImage image) throws IOException {
+            if (image.bbox() == null) {
+                writeVarInt(this.out, 0);
+            } else {
+                writeVarInt(this.out, image.bbox().length + 1);
+                for (Double value : image.bbox()) {
+                    this.out.writeDouble(value == null ? Double.NaN : value);
+                }
+            }
+            writeString(image.type());
+            writeLinks(image.links());
+            if (image.assets() == null) {
+                writeVarInt(this.out, 0);
+            } else {
+                writeVarInt(this.out, image.assets().size() + 1);
+                for (Map.Entry<String, PanoramaxLink> asset : image.assets().entrySet()) {
+                    writeString(asset.getKey());
+                    writeLink(asset.getValue());
+                }
+            }
+            if (image.providers() == null) {
+                writeVarInt(this.out, 0);
+            } else {
+                writeVarInt(this.out, image.providers().length + 1);
+                for (PanoramaxProvider provider : image.providers()) {
+                    writeString(provider.id());
+                    writeString(provider.name());
+                    writeStrings(provider.roles());
+                }
+            }
+            writeString(image.collection());
+            writeProperties(image.properties());
+            writeString(image.stac_version());
+            writeStrings(image.stac_extensions());
+        }
+
+        private void writeProperties(PanoramaxProperties properties) throws IOException {
+            this.out.writeBoolean(properties != null);
+            if (properties == null) {
+                return;
+            }
+            writeExif(properties.exif());
+            writeString(properties.created());
+            writeString(properties.license());
+            writeString(properties.updated());
+            writeString(properties.datetime());
+            writeObjects(properties.semantics());
+            writeString(properties.collection() instanceof String string ? string : null);
+            writeString(properties.datetimez());
+            writeObjects(properties.annotations());
+            writeInteger(properties.view_azimuth());
+            writeString(properties.geovisio_image());
+            writeString(properties.geovisio_status());
+            writeString(properties.geovisio_producer());
+            writeString(properties.geovisio_thumbnail());
+            writeString(properties.original_file_name());
+            writeInteger(properties.original_file_size());
+            writeString(properties.geovisio_visibility());
+            final PanoramaxPersInteriorOrientation orientation = properties.pers_interior_orientation();
+            this.out.writeBoolean(orientation != null);
+            if (orientation != null) {
+                writeString(orientation.camera_model());
+                this.out.writeDouble(orientation.focal_length());
+                writeString(orientation.camera_manufacturer());
+                if (orientation.sensor_array_dimensions() == null) {
+                    writeVarInt(this.out, 0);
+                } else {
+                    writeVarInt(this.out, orientation.sensor_array_dimensions().length + 1);
+                    for (Integer dimension : orientation.sensor_array_dimensions()) {
+                        writeInteger(dimension);
+                    }
+                }
+            }
+            writeInteger(properties.geovisio_rank_in_collection());
+            this.out.writeBoolean(properties.quality_horizontal_accuracy() != null);
+            if (properties.quality_horizontal_accuracy() != null) {
+                this.out.writeDouble(properties.quality_horizontal_accuracy());
+            }
+            final PanoramaxTimestamps timestamps = properties.timestamps();
+            this.out.writeBoolean(timestamps != null);
+            if (timestamps != null) {
+                this.out.writeLong(timestamps.exif());
+                this.out.writeLong(timestamps.gps());
+                this.out.writeLong(timestamps.datetime());
+                this.out.writeLong(timestamps.datetimez());
+            }
+        }
+
+        private void writeExif(PanoramaxLazyExif exif) throws IOException {
+            // This is already compact, and it is only decoded if the picture is shown
+            if (exif == null) {
+                writeVarInt(this.out, 0);
+            } else {
+                writeVarInt(this.out, exif.data().length + 1);
+                this.out.write(exif.data());
+            }
+        }
+
+        private void writeLinks(PanoramaxLink[] links) throws IOException {
+            if (links == null) {
+                writeVarInt(this.out, 0);
+                return;
+            }
+            writeVarInt(this.out, links.length + 1);
+            for (PanoramaxLink link : links) {
+                writeLink(link);
+            }
+        }
+
+        private void writeLink(PanoramaxLink link) throws IOException {
+            // Split the URL at the last path separator, so that the shared prefixes and file names are stored once
+            final String href = link.href() == null ? null : link.href().toString();
+            final int split = href == null ? 0 : href.lastIndexOf('/') + 1;
+            writeString(href == null ? null : href.substring(0, split));
+            writeString(href == null ? null : href.substring(split));
+            writeString(link.rel());
+            writeString(link.type());
+            writeString(link.title());
+        }
+
+        private void writeObjects(Object[] objects) throws IOException {
+            if (objects == null) {
+                writeVarInt(this.out, 0);
+                return;
+            }
+            writeVarInt(this.out, objects.length + 1);
+            for (Object object : objects) {
+                // The deserializer only creates strings for these; anything else is null
+                writeString(object instanceof String string ? string : null);
+            }
+        }
+
+        private void writeStrings(String[] values) throws IOException {
+            if (values == null) {
+                writeVarInt(this.out, 0);
+                return;
+            }
+            writeVarInt(this.out, values.length + 1);
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+
+        private void writeInteger(Integer value) throws IOException {
+            if (value == null) {
+                writeVarInt(this.out, 0);
+            } else {
+                // zig-zag encode, then offset by one for null
+                writeVarInt(this.out, ((value << 1) ^ (value >> 31)) + 1);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(this.out, 0);
+            } else {
+                writeVarInt(this.out, this.strings.computeIfAbsent(value, v -> this.strings.size()) + 1);
+            }
+        }
+
+        /**
+         * Add a string to the string table
+         * @param value The string to add
+         * @return The index of the string in the table, or {@code -1} for {@code null}
+         */
+        int intern(String value) {
+            return value == null ? -1 : this.strings.computeIfAbsent(value, v -> this.strings.size());
+        }
+    }
+
+    private static final class Decoder {
+        private final DataInputStream in;
+        private final String[] strings;
+        /** Links are immutable, so repeated links can share an instance */
+        private final Map<List<String>, PanoramaxLink> links = new HashMap<>();
+
+        Decoder(DataInputStream in, String[] strings) {
+            this.in = in;
+            this.strings = strings;
+        }
+
+        PanoramaxCollection readCollection() throws IOException {
+            final PanoramaxLink[] collectionLinks = readLinks();
+            final int size = readVarInt(this.in);
+            final int[] ids = new int[size];
+            final double[] lat = new double[size];
+            final double[] lon = new double[size];
+            final short[] heading = new short[size];
+            final long[] timestamps = new long[size];
+            final int[] offsets = new int[size + 1];
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            for (int i = 0; i < size; i++) {
+                // The string table is the dictionary of the collection
+                ids[i] = readVarInt(this.in) - 1;
+                lat[i] = this.in.readDouble();
+                lon[i] = this.in.readDouble();
+                heading[i] = this.in.readShort();
+                timestamps[i] = this.in.readLong();
+                data.write(this.in.readNBytes(readVarInt(this.in)));
+                offsets[i + 1] = data.size();
+            }
+            return new PanoramaxCollection(collectionLinks,
+                    new Columns(this.strings, ids, lat, lon, heading, timestamps, data.toByteArray(), offsets));
+        }
+
+        PanoramaxImage readImage() throws IOException {
+            final String id = readString();
+            final double lat = this.in.readDouble();
+            final double lon = this.in.readDouble();
+            return readBody(id, lat, lon);
+        }
+
+        PanoramaxImage readBody(String id, double lat, double lon) throws IOException {
+            final int bboxLength = readVarInt(this.in);
+            Double[] bbox = null;
+            if (bboxLength > 0) {
+                bbox = new Double[bboxLength - 1];
+                for (int i = 0; i < bbox.length; i++) {
+                    final double value = this.in.readDouble();
+                    bbox[i] = Double.isNaN(value) ? null : value;
+                }
+            }
+            final String type = readString();
+            final PanoramaxLink[] imageLinks = readLinks();
+            final int assetCount = readVarInt(this.in);
+            Map<String, PanoramaxLink> assets = null;
+            if (assetCount > 0) {
+                assets = new HashMap<>(assetCount - 1);
+                for (int i = 0; i < assetCount - 1; i++) {
+                    assets.put(readString(), readLink());
+                }
+            }
+            final int providerCount = readVarInt(this.in);
+            PanoramaxProvider[] providers = null;
+            if (providerCount > 0) {
+                providers = new PanoramaxProvider[providerCount - 1];
+                for (int i = 0; i < providers.length; i++) {
+                    providers[i] = new PanoramaxProvider(readString(), readString(), readStrings());
+                }
+            }
+            final String collection = readString();
+            final PanoramaxProperties properties = readProperties();
+            final String stacVersion = readString();
+            final String[] stacExtensions = readStrings();
+            return new PanoramaxImage(id, bbox, type, imageLinks, assets, providers, collection, properties,
+                    stacVersion, lat, lon, stacExtensions);
+        }
+
+        private PanoramaxProperties readProperties() throws IOException {
+            if (!this.in.readBoolean()) {
+                return null;
+            }
+            final PanoramaxLazyExif exif = readExif();
+            final String created = readString();
+            final String license = readString();
+            final String updated = readString();
+            final String datetime = readString();
+            final Object[] semantics = readObjects();
+            final Object collection = readString();
+            final String datetimez = readString();
+            final Object[] annotations = readObjects();
+            final Integer viewAzimuth = readInteger();
+            final String geovisioImage = readString();
+            final String geovisioStatus = readString();
+            final String geovisioProducer = readString();
+            final String geovisioThumbnail = readString();
+            final String originalFileName = readString();
+            final Integer originalFileSize = readInteger();
+            final String geovisioVisibility = readString();
+            PanoramaxPersInteriorOrientation orientation = null;
+            if (this.in.readBoolean()) {
+                final String cameraModel = readString();
+                final double focalLength = this.in.readDouble();
+                final String cameraManufacturer = readString();
+                final int dimensionCount = readVarInt(this.in);
+                Integer[] dimensions = null;
+                if (dimensionCount > 0) {
+                    dimensions = new Integer[dimensionCount - 1];
+                    for (int i = 0; i < dimensions.length; i++) {
+                        dimensions[i] = readInteger();
+                    }
+                }
+                orientation = new PanoramaxPersInteriorOrientation(cameraModel, focalLength, cameraManufacturer,
+                        dimensions);
+            }
+            final Integer rank = readInteger();
+            final Double accuracy = this.in.readBoolean() ? this.in.readDouble() : null;
+            final PanoramaxTimestamps timestamps = this.in.readBoolean() ? new PanoramaxTimestamps(
+                    this.in.readLong(), this.in.readLong(), this.in.readLong(), this.in.readLong()) : null;
+            return new PanoramaxProperties(exif, created, license, updated, datetime, semantics, collection,
+                    datetimez, annotations, viewAzimuth, geovisioImage, geovisioStatus, geovisioProducer,
+                    geovisioThumbnail, originalFileName, originalFileSize, geovisioVisibility, orientation, rank,
+                    accuracy, timestamps);
+        }
+
+        private PanoramaxLazyExif readExif() throws IOException {
+            final int length = readVarInt(this.in);
+            return length == 0 ? null : new PanoramaxLazyExif(this.in.readNBytes(length - 1));
+        }
+
+        private PanoramaxLink[] readLinks() throws IOException {
+            final int count = readVarInt(this.in);
+            if (count == 0) {
+                return null;
+            }
+            final PanoramaxLink[] read = new PanoramaxLink[count - 1];
+            for (int i = 0; i < read.length; i++) {
+                read[i] = readLink();
+            }
+            return read;
+        }
+
+        private PanoramaxLink readLink() throws IOException {
+            final String prefix = readString();
+            final String file = readString();
+            final String rel = readString();
+            final String type = readString();
+            final String title = readString();
+            return this.links.computeIfAbsent(Arrays.asList(prefix, file, rel, type, title),
+                    key -> new PanoramaxLink(prefix == null ? null : URI.create(prefix + file), rel, type, title));
+        }
+
+        private Object[] readObjects() throws IOException {
+            final int count = readVarInt(this.in);
+            if (count == 0) {
+                return null;
+            }
+            final Object[] objects = new Object[count - 1];
+            for (int i = 0; i < objects.length; i++) {
+                objects[i] = readString();
+            }
+            return objects;
+        }
+
+        private String[] readStrings() throws IOException {
+            final int count = readVarInt(this.in);
+            if (count == 0) {
+                return null;
+            }
+            final String[] values = new String[count - 1];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readString();
+            }
+            return values;
+        }
+
+        private Integer readInteger() throws IOException {
+            final int value = readVarInt(this.in);
+            if (value == 0) {
+                return null;
+            }
+            final int zigzag = value - 1;
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        private String readString() throws IOException {
+            final int index = readVarInt(this.in);
+            return index == 0 ? null : this.strings[index - 1];
+        }
+    }
+}
@@ -5,17 +5,81 @@
  */
 package org.openstreetmap.josm.plugins.panoramax.data;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serial;
 import java.io.Serializable;
 import java.util.AbstractList;
-import java.util.Arrays;
+import java.util.Objects;
 
+import jakarta.annotation.Nullable;
+
+/**
+ * A page of pictures. Pictures are stored in columns: the values that are read for every picture are kept in
+ * primitive arrays, ids are indexes into the string dictionary of the page, and the rest of each picture is kept
+ * encoded until {@link #get(int)} is called.
+ */
 public final class PanoramaxCollection extends AbstractList<PanoramaxImage> implements Serializable {
-    private final PanoramaxImage[] images;
+    /** The value of {@link #getHeading(int)} when a picture has no heading */
+    public static final short NO_HEADING = Short.MIN_VALUE;
+    /** The value of {@link #getTimestamp(int)} when a picture has no timestamp */
+    public static final long NO_TIMESTAMP = PanoramaxTimestamps.NONE;
+    /** The number of recently created pictures to keep, so that stepping through a page does not decode again */
+    private static final int RECENT = 8;
+
+    private final PanoramaxCodec.Columns columns;
     private final PanoramaxLink[] links;
+    /**
+     * An open addressing hash table of picture id to picture index. Entries are {@code index + 1}, so that {@code 0}
+     * can mark an empty slot.
+     */
+    private final transient int[] idIndex;
+    /** Recently created pictures, by {@code index % RECENT}. These are immutable, so racing writes are harmless. */
+    private final transient Decoded[] recent = new Decoded[RECENT];
 
     public PanoramaxCollection(PanoramaxLink[] links, PanoramaxImage... features) {
-        this.images = Arrays.copyOf(features, features.length);
+        this(links, PanoramaxCodec.columns(features));
+    }
+
+    PanoramaxCollection(PanoramaxLink[] links, PanoramaxCodec.Columns columns) {
+        this.columns = columns;
         this.links = links;
+        this.idIndex = buildIdIndex(columns);
+    }
+
+    @Serial
+    private Object writeReplace() {
+        return PanoramaxCodec.serialize(this);
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Collections are serialized with PanoramaxCodec");
+    }
+
+    private static int[] buildIdIndex(PanoramaxCodec.Columns columns) {
+        final int size = columns.ids().length;
+        // Keep the load factor at or below 0.5, so probe sequences stay short
+        final int[] table = new int[Integer.highestOneBit(Math.max(1, size)) << 2];
+        final int mask = table.length - 1;
+        for (int i = 0; i < size; i++) {
+            final String id = columns.getId(i);
+            if (id != null) {
+                int slot = hash(id) & mask;
+                while (table[slot] != 0 && !id.equals(columns.getId(table[slot] - 1))) {
+                    slot = (slot + 1) & mask;
+                }
+                if (table[slot] == 0) {
+                    table[slot] = i + 1;
+                }
+            }
+        }
+        return table;
+    }
+
+    private static int hash(String id) {
+        final int h = id.hashCode();
+        return h ^ (h >>> 16);
     }
 
     /**
@@ -26,13 +90,124 @@ public final class PanoramaxCollection extends AbstractList<PanoramaxImage> impl
         return this.links;
     }
 
+    /**
+     * Get the first link with the specified relation
+     * @param rel The relation (e.g. {@code next}, {@code prev}, {@code first}, or {@code last})
+     * @return The link, or {@code null} if there is no link with that relation
+     */
+    @Nullable
+    public PanoramaxLink getLink(String rel) {
+        for (PanoramaxLink link : this.links) {
+            if (rel.equals(link.rel())) {
+                return link;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the index of a picture
+     * @param id The picture id
+     * @return The index of the picture, or {@code -1} if it is not in this collection
+     */
+    public int indexOf(String id) {
+        final int mask = this.idIndex.length - 1;
+        for (int slot = hash(id) & mask; this.idIndex[slot] != 0; slot = (slot + 1) & mask) {
+            final int index = this.idIndex[slot] - 1;
+            if (id.equals(this.columns.getId(index))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Pictures are matched by id, since the records themselves compare their arrays by reference.
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (o instanceof PanoramaxImage image && image.id() != null) {
+            return indexOf(image.id());
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Get the id of a picture without creating the picture
+     * @param index The index of the picture
+     * @return The picture id
+     */
+    public String getId(int index) {
+        return this.columns.getId(index);
+    }
+
+    /**
+     * Get the latitude of a picture without creating the picture
+     * @param index The index of the picture
+     * @return The latitude
+     */
+    public double getLat(int index) {
+        return this.columns.lat()[index];
+    }
+
+    /**
+     * Get the longitude of a picture without creating the picture
+     * @param index The index of the picture
+     * @return The longitude
+     */
+    public double getLon(int index) {
+        return this.columns.lon()[index];
+    }
+
+    /**
+     * Get the heading of a picture without creating the picture
+     * @param index The index of the picture
+     * @return The heading in degrees, or {@link #NO_HEADING}
+     */
+    public short getHeading(int index) {
+        return this.columns.heading()[index];
+    }
+
+    /**
+     * Get the capture time of a picture without creating the picture
+     * @param index The index of the picture
+     * @return The capture time in milliseconds since the epoch, or {@link #NO_TIMESTAMP}
+     */
+    public long getTimestamp(int index) {
+        return this.columns.timestamps()[index];
+    }
+
+    PanoramaxCodec.Columns columns() {
+        return this.columns;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The picture is decoded from the columns, unless it was one of the last few pictures that were asked for.
+     */
     @Override
     public PanoramaxImage get(int index) {
-        return this.images[index];
+        Objects.checkIndex(index, size());
+        final int slot = index % RECENT;
+        Decoded decoded = this.recent[slot];
+        if (decoded == null || decoded.index() != index) {
+            decoded = new Decoded(index, PanoramaxCodec.materialize(this.columns, index));
+            this.recent[slot] = decoded;
+        }
+        return decoded.image();
+    }
+
+    private record Decoded(int index, PanoramaxImage image) {
     }
 
     @Override
     public int size() {
-        return this.images.length;
+        return this.columns.ids().length;
     }
 }
@@ -5,6 +5,7 @@
  */
 package org.openstreetmap.josm.plugins.panoramax.data;
 
+import java.io.Serial;
 import java.io.Serializable;
 import java.util.Map;
 
@@ -43,4 +44,43 @@ public enum Asset {
                 .findAny().orElseGet(() -> assets.getOrDefault("thumb", null));
     }
 
+    /**
+     * Get the smallest known asset that is at least as wide as the target
+     * @param width The target width. Non-positive values mean that the largest known asset is wanted.
+     * @return The asset, or {@code null} if this picture has none of the known assets
+     */
+    @Nullable
+    public Asset getAsset(int width) {
+        final Asset[] known = Asset.values();
+        if (width > 0) {
+            for (int i = known.length - 1; i >= 0; i--) {
+                if (known[i].maxwidth >= width && assets.containsKey(known[i].name())) {
+                    return known[i];
+                }
+            }
+        }
+        for (Asset asset : known) {
+            if (assets.containsKey(asset.name())) {
+                return asset;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the image link that best fits the target width
+     * @param width The target width. Non-positive values mean that the best image is wanted.
+     * @return The link
+     */
+    @Nullable
+    public PanoramaxLink getImageLink(int width) {
+        final Asset asset = getAsset(width);
+        return asset == null ? getBestImageLink() : assets.get(asset.name());
+    }
+
+    @Serial
+    private Object writeReplace() {
+        return PanoramaxCodec.serialize(this);
+    }
+
 }
@@ -0,0 +1,101 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * EXIF metadata that is only decoded when it is needed. Most pictures in a page are never shown, so the
+ * {@link PanoramaxExif} record is only built on the first call to {@link #get()}.
+ */
+public final class PanoramaxLazyExif implements Serializable {
+    /** The present fields, each stored as the field index, the UTF-8 length, and the UTF-8 bytes */
+    private final byte[] data;
+    private transient volatile PanoramaxExif exif;
+
+    PanoramaxLazyExif(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Create a new lazy EXIF object
+     * @param values The values, in {@link PanoramaxExif} component order. {@code null} values are not stored.
+     * @return The lazy EXIF object
+     */
+    @Nonnull
+    public static PanoramaxLazyExif of(String... values) {
+        if (values.length != PanoramaxExif.FIELD_COUNT) {
+            throw new IllegalArgumentException(
+                    "Expected " + PanoramaxExif.FIELD_COUNT + " values, got " + values.length);
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    final byte[] utf8 = values[i].getBytes(StandardCharsets.UTF_8);
+                    out.write(i);
+                    PanoramaxCodec.writeVarInt(out, utf8.length);
+                    out.write(utf8);
+                }
+            }
+        } catch (IOException e) {
+            // We are only writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return new PanoramaxLazyExif(out.toByteArray());
+    }
+
+    /**
+     * Get the EXIF record, decoding it if this is the first call
+     * @return The EXIF record
+     */
+    @Nonnull
+    public PanoramaxExif get() {
+        PanoramaxExif decoded = this.exif;
+        if (decoded == null) {
+            decoded = decode();
+            this.exif = decoded;
+        }
+        return decoded;
+    }
+
+    byte[] data() {
+        return this.data;
+    }
+
+    private PanoramaxExif decode() {
+        final String[] values = new String[PanoramaxExif.FIELD_COUNT];
+        final ByteArrayInputStream in = new ByteArrayInputStream(this.data);
+        try {
+            int field;
+            while ((field = in.read()) >= 0) {
+                values[field] = new String(in.readNBytes(PanoramaxCodec.readVarInt(in)), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            // We wrote the data ourselves, so this should never happen
+            throw new UncheckedIOException(e);
+        }
+        return PanoramaxExif.fromArray(values);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof PanoramaxLazyExif other && Arrays.equals(this.data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.data);
+    }
+}
@@ -6,6 +6,19 @@
 package org.openstreetmap.josm.plugins.panoramax.data;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
 
 public record PanoramaxProvider(String id, String name, String... roles) implements Serializable {
+    @Override
+    public boolean equals(Object obj) {
+        // Compare the roles by value, so that equal providers can be shared between pictures
+        return obj instanceof PanoramaxProvider other && Objects.equals(this.id, other.id)
+                && Objects.equals(this.name, other.name) && Arrays.equals(this.roles, other.roles);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(this.id, this.name) + Arrays.hashCode(this.roles);
+    }
 }
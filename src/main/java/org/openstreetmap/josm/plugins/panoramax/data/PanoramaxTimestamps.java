@@ -0,0 +1,100 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax.data;
+
+import java.io.Serializable;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import org.openstreetmap.josm.tools.Logging;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * The times for a picture, parsed once when the picture is read. All values are milliseconds since the epoch, or
+ * {@link #NONE} if the picture does not have that time.
+ * @param exif The EXIF image time ({@code Exif.Image.DateTime})
+ * @param gps The EXIF GPS time ({@code Exif.GPSInfo.GPSDateStamp} and {@code Exif.GPSInfo.GPSTimeStamp})
+ * @param datetime The capture time from the API ({@code datetime})
+ * @param datetimez The capture time with the local offset from the API ({@code datetimez})
+ */
+public record PanoramaxTimestamps(long exif, long gps, long datetime, long datetimez) implements Serializable {
+    /** The value used when a time is not present or could not be parsed */
+    public static final long NONE = Long.MIN_VALUE;
+    // TODO: is this normalized to UTC in all cases?
+    private static final DateTimeFormatter EXIF_DATE_TIME = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss")
+            .withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter GPS_DATE = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    /**
+     * Parse the times for a picture
+     * @param exifDateTime The EXIF image time
+     * @param gpsDateStamp The EXIF GPS date
+     * @param gpsTimeStamp The EXIF GPS time, as three rationals
+     * @param datetime The ISO 8601 capture time
+     * @param datetimez The ISO 8601 capture time with offset
+     * @return The parsed times
+     */
+    public static PanoramaxTimestamps parse(@Nullable String exifDateTime, @Nullable String gpsDateStamp,
+            @Nullable String gpsTimeStamp, @Nullable String datetime, @Nullable String datetimez) {
+        return new PanoramaxTimestamps(parse(exifDateTime, EXIF_DATE_TIME), parseGps(gpsDateStamp, gpsTimeStamp),
+                parse(datetime, DateTimeFormatter.ISO_DATE_TIME), parse(datetimez, DateTimeFormatter.ISO_DATE_TIME));
+    }
+
+    /**
+     * Convert a time to an instant
+     * @param time The time in milliseconds since the epoch, or {@link #NONE}
+     * @return The instant, or {@code null} if the time is {@link #NONE}
+     */
+    @Nullable
+    public static Instant toInstant(long time) {
+        return time == NONE ? null : Instant.ofEpochMilli(time);
+    }
+
+    private static long parse(String value, DateTimeFormatter formatter) {
+        if (value != null) {
+            try {
+                return formatter.parse(value, Instant::from).toEpochMilli();
+            } catch (DateTimeException e) {
+                Logging.trace(e);
+            }
+        }
+        return NONE;
+    }
+
+    private static long parseGps(String date, String time) {
+        if (date == null || time == null) {
+            return NONE;
+        }
+        try {
+            final String[] parts = time.split(" ", 3);
+            double seconds = 0;
+            for (int i = 0; i < parts.length; i++) {
+                // Each part is rounded, like the hours, minutes, and seconds fields
+                seconds = seconds * 60 + Math.round(parseRational(parts[i]));
+            }
+            for (int i = parts.length; i < 3; i++) {
+                seconds *= 60;
+            }
+            return LocalDate.parse(date, GPS_DATE).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli()
+                    + (long) seconds * 1000;
+        } catch (DateTimeException | NumberFormatException e) {
+            Logging.trace(e);
+            return NONE;
+        }
+    }
+
+    private static double parseRational(String value) {
+        final int slash = value.indexOf('/');
+        if (slash >= 0) {
+            return Double.parseDouble(value.substring(0, slash)) / Double.parseDouble(value.substring(slash + 1));
+        }
+        return Double.parseDouble(value);
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for {@link DecodedImageCache}
+ */
+class DecodedImageCacheTest {
+    @Test
+    void testWeight() {
+        assertEquals(4 * 3 * 4, DecodedImageCache.weight(new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB)));
+        assertEquals(4 * 3 * 3, DecodedImageCache.weight(new BufferedImage(4, 3, BufferedImage.TYPE_3BYTE_BGR)));
+    }
+
+    @Test
+    void testHitsAndMisses() {
+        final DecodedImageCache cache = new DecodedImageCache(() -> 1024);
+        final BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        assertNull(cache.get(List.of("a")));
+        cache.put("a", image);
+        assertSame(image, cache.get(List.of("a")));
+        // A larger asset can stand in for the requested one
+        assertSame(image, cache.get(List.of("b", "a")));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testBudget() {
+        // Room for two 4x4 RGB images
+        final DecodedImageCache cache = new DecodedImageCache(() -> 2 * 4 * 4 * 4);
+        final BufferedImage a = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        final BufferedImage b = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        final BufferedImage c = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        cache.put("a", a);
+        cache.put("b", b);
+        // Use a, so that b is the least recently used
+        assertSame(a, cache.get(List.of("a")));
+        cache.put("c", c);
+        assertNull(cache.get(List.of("b")));
+        assertSame(a, cache.get(List.of("a")));
+        assertSame(c, cache.get(List.of("c")));
+        // Images over the budget are not cached
+        cache.put("d", new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB));
+        assertNull(cache.get(List.of("d")));
+    }
+}
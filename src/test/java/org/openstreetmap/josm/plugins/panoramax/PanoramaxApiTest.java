@@ -0,0 +1,269 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.jcs3.access.CacheAccess;
+import org.apache.commons.jcs3.engine.control.CompositeCacheManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxCollection;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxImage;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxLink;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+import jakarta.json.Json;
+
+/**
+ * Test class for {@link PanoramaxApi}
+ */
+@BasicPreferences
+@Timeout(30)
+class PanoramaxApiTest {
+    private static final int THREADS = 8;
+
+    private ExecutorService executor;
+    /** A new api for each test, so that the live checks and caches of other tests are not used */
+    private String api;
+    /** The requests the transport has seen */
+    private final List<URI> requests = new CopyOnWriteArrayList<>();
+    /** Opened when the first request reaches the transport */
+    private final CountDownLatch requested = new CountDownLatch(1);
+    /** Requests wait for this, so that every caller asks while the first request is running */
+    private final CountDownLatch release = new CountDownLatch(1);
+    /** The response body for a request, or {@code null} for an error */
+    private volatile Function<URI, byte[]> responses = uri -> null;
+
+    @BeforeEach
+    void setUp() {
+        this.executor = Executors.newFixedThreadPool(THREADS);
+        this.api = "https://" + UUID.randomUUID() + ".panoramax.example/api/";
+        PanoramaxApi.setTransport(new PanoramaxTransport() {
+            @Override
+            public InputStream get(URI uri) throws IOException {
+                requests.add(uri);
+                requested.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(e.getMessage());
+                }
+                final byte[] body = responses.apply(uri);
+                if (body == null) {
+                    throw new IOException("HTTP 500 for " + uri);
+                }
+                return new ByteArrayInputStream(body);
+            }
+
+            @Override
+            public int head(URI uri) {
+                return 200;
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        PanoramaxApi.setTransport(null);
+        this.executor.shutdownNow();
+        this.executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testGetItemIsCoalesced() throws Exception {
+        final String id = UUID.randomUUID().toString();
+        this.responses = uri -> utf8(PanoramaxDeserializerTest.feature(id, 0));
+        final List<PanoramaxImage> items = getConcurrently(() -> PanoramaxApi.getItem(this.api, "c1", id));
+        assertEquals(1, this.requests.size(), "requests: " + this.requests);
+        assertEquals(id, items.get(0).id());
+        items.forEach(item -> assertSame(items.get(0), item));
+        assertEquals(0, PanoramaxApi.getInFlightCount());
+    }
+
+    @Test
+    void testGetCollectionPageIsCoalesced() throws Exception {
+        final String collection = UUID.randomUUID().toString();
+        this.responses = uri -> utf8(PanoramaxDeserializerTest.page(0, 10));
+        final List<PanoramaxCollection> pages = getConcurrently(
+                () -> PanoramaxApi.getCollectionPage(this.api, collection, "picture-3"));
+        assertEquals(1, this.requests.size(), "requests: " + this.requests);
+        assertEquals(10, pages.get(0).size());
+        pages.forEach(page -> assertSame(pages.get(0), page));
+        assertEquals(0, PanoramaxApi.getInFlightCount());
+    }
+
+    /**
+     * Selecting another picture in a page that was already loaded must not load the page again
+     */
+    @Test
+    void testCollectionPageIsReusedForOtherPictures() {
+        final String collection = UUID.randomUUID().toString();
+        this.responses = uri -> utf8(PanoramaxDeserializerTest.page(0, 10));
+        this.release.countDown();
+        final PanoramaxCollection page = PanoramaxApi.getCollectionPage(this.api, collection, "picture-3");
+        assertSame(page, PanoramaxApi.getCollectionPage(this.api, collection, "picture-7"));
+        assertEquals(1, this.requests.size(), "requests: " + this.requests);
+        // A picture that is not in the page loads the page with that picture
+        PanoramaxApi.getCollectionPage(this.api, collection, "picture-12");
+        assertEquals(2, this.requests.size(), "requests: " + this.requests);
+    }
+
+    @Test
+    void testGetImageIsCoalesced() throws Exception {
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB), "png", png);
+        this.responses = uri -> png.toByteArray();
+        final PanoramaxImage image = PanoramaxDeserializer.parseImage(Json.createParser(new StringReader(
+                PanoramaxDeserializerTest.feature(UUID.randomUUID().toString(), 0))), new PanoramaxInterner());
+        final List<BufferedImage> decoded = getConcurrently(() -> PanoramaxApi.getImage(this.api, image, -1, true));
+        assertEquals(1, this.requests.size(), "requests: " + this.requests);
+        assertEquals(8, decoded.get(0).getWidth());
+        decoded.forEach(picture -> assertSame(decoded.get(0), picture));
+        assertEquals(0, PanoramaxApi.getInFlightCount());
+    }
+
+    @Test
+    void testFailuresAreNotCached() throws Exception {
+        final String id = UUID.randomUUID().toString();
+        final List<Future<PanoramaxImage>> results = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            results.add(this.executor.submit(() -> PanoramaxApi.getItem(this.api, "c1", id)));
+        }
+        this.requested.await();
+        this.release.countDown();
+        for (Future<PanoramaxImage> result : results) {
+            final ExecutionException exception = assertThrows(ExecutionException.class, result::get);
+            assertInstanceOf(UncheckedIOException.class, exception.getCause());
+        }
+        assertEquals(0, PanoramaxApi.getInFlightCount());
+
+        // The next request runs a new fetch
+        this.responses = uri -> utf8(PanoramaxDeserializerTest.feature(id, 0));
+        final int failed = this.requests.size();
+        assertEquals(id, PanoramaxApi.getItem(this.api, "c1", id).id());
+        assertEquals(failed + 1, this.requests.size());
+    }
+
+    /**
+     * Collections and pictures are cached on disk, so they must come back from the disk region intact
+     */
+    @Test
+    void testDiskCacheRoundTrip() throws IOException {
+        final Path directory = Files.createTempDirectory("panoramax-cache");
+        try {
+            final List<PanoramaxImage> images = PanoramaxDeserializerTest.parse(10, new PanoramaxInterner());
+            final PanoramaxCollection collection = new PanoramaxCollection(new PanoramaxLink[0],
+                    images.toArray(PanoramaxImage[]::new));
+            final CacheAccess<String, PanoramaxCollection> collections = PanoramaxApi.getDiskCache(
+                    "PanoramaxCollectionsTest", 10, 10, directory.toString());
+            final CacheAccess<String, PanoramaxImage> items = PanoramaxApi.getDiskCache("PanoramaxItemsTest", 10, 10,
+                    directory.toString());
+            collections.put("page", collection);
+            items.put(images.get(0).id(), images.get(0));
+            // Drop the regions from memory, so that the entries have to be read back from disk
+            CompositeCacheManager.getUnconfiguredInstance().freeCache("PanoramaxCollectionsTest");
+            CompositeCacheManager.getUnconfiguredInstance().freeCache("PanoramaxItemsTest");
+
+            final PanoramaxCollection readCollection = PanoramaxApi.<PanoramaxCollection>getDiskCache(
+                    "PanoramaxCollectionsTest", 10, 10, directory.toString()).get("page");
+            assertNotSame(collection, readCollection);
+            assertEquals(collection.size(), readCollection.size());
+            for (int i = 0; i < collection.size(); i++) {
+                assertSamePicture(collection.get(i), readCollection.get(i));
+            }
+            final PanoramaxImage readItem = PanoramaxApi.<PanoramaxImage>getDiskCache("PanoramaxItemsTest", 10, 10,
+                    directory.toString()).get(images.get(0).id());
+            assertNotSame(images.get(0), readItem);
+            assertSamePicture(images.get(0), readItem);
+        } finally {
+            CompositeCacheManager.getUnconfiguredInstance().freeCache("PanoramaxCollectionsTest");
+            CompositeCacheManager.getUnconfiguredInstance().freeCache("PanoramaxItemsTest");
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static void assertSamePicture(PanoramaxImage expected, PanoramaxImage actual) {
+        assertEquals(expected.id(), actual.id());
+        assertEquals(expected.lat(), actual.lat());
+        assertEquals(expected.lon(), actual.lon());
+        assertEquals(expected.collection(), actual.collection());
+        assertEquals(Arrays.asList(expected.links()), Arrays.asList(actual.links()));
+        assertEquals(expected.assets(), actual.assets());
+        assertEquals(Arrays.asList(expected.providers()), Arrays.asList(actual.providers()));
+        assertEquals(expected.properties(), actual.properties());
+    }
+
+    /**
+     * Call the api from several threads at once. The first request is held until every thread has made its call.
+     * Threads that call after the first request finishes get the cached result, so the number of requests is the
+     * same either way.
+     * @param call The call
+     * @return The result for each thread
+     */
+    private <T> List<T> getConcurrently(Callable<T> call) throws Exception {
+        final CountDownLatch called = new CountDownLatch(THREADS);
+        final List<Future<T>> futures = new ArrayList<>(THREADS);
+        for (int thread = 0; thread < THREADS; thread++) {
+            futures.add(this.executor.submit(() -> {
+                called.countDown();
+                return call.call();
+            }));
+        }
+        called.await();
+        this.requested.await();
+        this.release.countDown();
+        final List<T> results = new ArrayList<>(THREADS);
+        for (Future<T> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
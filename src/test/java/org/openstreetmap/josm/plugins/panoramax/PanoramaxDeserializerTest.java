@@ -0,0 +1,229 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxImage;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxLink;
+
+import jakarta.json.Json;
+import jakarta.json.stream.JsonParser;
+
+/**
+ * Test class for {@link PanoramaxDeserializer}
+ */
+class PanoramaxDeserializerTest {
+    @Test
+    void testParseCollection() {
+        final List<PanoramaxImage> images = parse(2, new PanoramaxInterner());
+        assertEquals(2, images.size());
+        final PanoramaxImage image = images.get(0);
+        assertEquals("picture-0", image.id());
+        assertEquals(48.1, image.lat());
+        assertEquals(2.1, image.lon());
+        assertEquals("c1", image.collection());
+        assertEquals("etalab-2.0", image.properties().license());
+        assertEquals("https://panoramax.example/derivates/picture-0/hd.jpg",
+                image.assets().get("hd").href().toString());
+        assertEquals("self", image.links()[1].rel());
+    }
+
+    @Test
+    void testRepeatedValuesAreShared() {
+        final List<PanoramaxImage> images = parse(2, new PanoramaxInterner());
+        final PanoramaxImage first = images.get(0);
+        final PanoramaxImage second = images.get(1);
+        assertSame(first.properties().license(), second.properties().license());
+        assertSame(first.providers()[0], second.providers()[0]);
+        assertSame(first.links()[1].rel(), second.links()[1].rel());
+        assertSame(first.links()[1].type(), second.links()[1].type());
+        final PanoramaxLink hd = first.assets().get("hd");
+        assertSame(hd.rel(), second.assets().get("hd").rel());
+        assertSame(hd.type(), second.assets().get("hd").type());
+        assertSame(first.type(), second.type());
+        assertSame(first.collection(), second.collection());
+        assertSame(first.stac_version(), second.stac_version());
+        assertSame(first.stac_extensions(), second.stac_extensions());
+        // The root link is the same for every picture, but the self link is not
+        assertSame(first.links()[0], second.links()[0]);
+        assertNotSame(first.links()[1], second.links()[1]);
+        // Per picture values are not interned
+        assertNotSame(first.properties().created(), second.properties().created());
+    }
+
+    @Test
+    void testRetainedSize() {
+        final int pictures = 1000;
+        final List<PanoramaxImage> interned = parse(pictures, new PanoramaxInterner());
+        // Without a shared interner, nothing is shared between pictures
+        final List<PanoramaxImage> separate = new ArrayList<>(pictures);
+        for (int i = 0; i < pictures; i++) {
+            try (JsonParser parser = Json.createParser(new StringReader(page(i, 1)))) {
+                PanoramaxDeserializer.parseCollection(parser, new PanoramaxInterner(), separate::add);
+            }
+        }
+        assertEquals(interned.get(pictures - 1).id(), separate.get(pictures - 1).id());
+        final long internedSize = retainedSize(interned);
+        final long separateSize = retainedSize(separate);
+        assertTrue(internedSize < separateSize * 0.8,
+                "interned: " + internedSize + " bytes, not interned: " + separateSize + " bytes");
+    }
+
+    /**
+     * The interner holds an entry for every distinct value it has seen, so it must not grow with the number of
+     * pictures.
+     */
+    @Test
+    void testInternerDoesNotGrowWithPictures() {
+        final PanoramaxInterner small = new PanoramaxInterner();
+        final List<PanoramaxImage> smallPage = parse(10, small);
+        final PanoramaxInterner large = new PanoramaxInterner();
+        final List<PanoramaxImage> largePage = parse(1000, large);
+        assertEquals(small.size(), large.size());
+        // Keep the pictures reachable, so the weakly referenced values cannot be collected before the check
+        assertEquals(1010, smallPage.size() + largePage.size());
+    }
+
+    static List<PanoramaxImage> parse(int pictures, PanoramaxInterner interner) {
+        final List<PanoramaxImage> images = new ArrayList<>(pictures);
+        try (JsonParser parser = Json.createParser(new StringReader(page(0, pictures)))) {
+            PanoramaxDeserializer.parseCollection(parser, interner, images::add);
+        }
+        return images;
+    }
+
+    static String page(int first, int pictures) {
+        final StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = first; i < first + pictures; i++) {
+            if (i > first) {
+                json.append(',');
+            }
+            json.append(feature("picture-" + i, i));
+        }
+        return json.append("],\"links\":[]}").toString();
+    }
+
+    static String feature(String id, int i) {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\"type\":\"Feature\",\"id\":\"").append(id).append("\",\"stac_version\":\"1.0.0\",")
+                .append("\"stac_extensions\":[\"https://stac-extensions.github.io/view/v1.0.0/schema.json\"],")
+                .append("\"geometry\":{\"type\":\"Point\",\"coordinates\":[").append(2.1 + i * 1e-4)
+                .append(',').append(48.1 + i * 1e-4).append("]},")
+                .append("\"links\":[{\"rel\":\"root\",\"href\":\"https://panoramax.example/api/\",")
+                .append("\"type\":\"application/json\"},{\"rel\":\"self\",\"href\":")
+                .append("\"https://panoramax.example/api/collections/c1/items/").append(id)
+                .append("\",\"type\":\"application/geo+json\"}],\"assets\":{");
+        for (String asset : new String[] {"hd", "sd", "thumb"}) {
+            json.append('"').append(asset).append("\":{\"href\":\"https://panoramax.example/derivates/")
+                    .append(id).append('/').append(asset).append(".jpg\",\"type\":\"image/jpeg\",")
+                    .append("\"rel\":\"data\"},");
+        }
+        json.setLength(json.length() - 1);
+        return json.append("},\"providers\":[{\"name\":\"someone\",\"roles\":[\"producer\"],\"id\":\"u1\"}],")
+                .append("\"collection\":\"c1\",\"properties\":{\"datetime\":\"2023-06-01T10:11:12+00:00\",")
+                .append("\"license\":\"etalab-2.0\",\"created\":\"2023-06-02T00:00:00+00:00\",")
+                .append("\"view:azimuth\":93,\"geovisio:status\":\"ready\"}}").toString();
+    }
+
+    /**
+     * Estimate the retained size of an object graph on a 64-bit JVM with compressed references. Objects reachable
+     * from several places are only counted once.
+     */
+    private static long retainedSize(Object root) {
+        final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<Object> stack = new ArrayDeque<>();
+        stack.push(root);
+        long size = 0;
+        while (!stack.isEmpty()) {
+            final Object object = stack.pop();
+            if (seen.add(object)) {
+                size += align(shallowSize(object, stack));
+            }
+        }
+        return size;
+    }
+
+    private static long shallowSize(Object object, Deque<Object> stack) {
+        if (object instanceof String string) {
+            return 24 + align(16 + string.length());
+        } else if (object instanceof URI uri) {
+            // The components of a URI are substrings of the full URI
+            return 80 + 2 * align(16 + uri.toString().length());
+        } else if (object instanceof Number || object instanceof Boolean) {
+            return 16;
+        } else if (object instanceof Map<?, ?> map) {
+            map.forEach((key, value) -> {
+                push(stack, key);
+                push(stack, value);
+            });
+            return 48 + align(16 + 4L * Integer.highestOneBit(Math.max(1, map.size() * 4 / 3) * 2)) + 32L * map.size();
+        } else if (object instanceof Collection<?> collection) {
+            collection.forEach(value -> push(stack, value));
+            return 24 + align(16 + 4L * collection.size());
+        } else if (object.getClass().isArray()) {
+            final Class<?> component = object.getClass().getComponentType();
+            final int length = Array.getLength(object);
+            if (!component.isPrimitive()) {
+                for (int i = 0; i < length; i++) {
+                    push(stack, Array.get(object, i));
+                }
+                return 16 + 4L * length;
+            }
+            return 16 + (long) length * (component == long.class || component == double.class ? 8
+                    : component == int.class || component == float.class ? 4
+                    : component == short.class || component == char.class ? 2 : 1);
+        }
+        long size = 12;
+        for (Class<?> clazz = object.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                final Class<?> type = field.getType();
+                size += type == long.class || type == double.class ? 8 : 4;
+                if (!type.isPrimitive()) {
+                    try {
+                        field.setAccessible(true);
+                        push(stack, field.get(object));
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private static void push(Deque<Object> stack, Object value) {
+        if (value != null && !(value instanceof Enum<?>)) {
+            stack.push(value);
+        }
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
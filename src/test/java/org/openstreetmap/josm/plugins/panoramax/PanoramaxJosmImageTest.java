@@ -0,0 +1,142 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxImage;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxLink;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Test class for {@link PanoramaxJosmImage}
+ */
+@BasicPreferences
+@Timeout(30)
+class PanoramaxJosmImageTest {
+    private static final String API = "https://upgrade.panoramax.example/api/";
+
+    /** Asset url to a latch that the download waits on */
+    private final Map<String, CountDownLatch> blocked = new ConcurrentHashMap<>();
+    private final CountDownLatch downloading = new CountDownLatch(1);
+    private final List<URI> downloads = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB), "png", png);
+        final byte[] bytes = png.toByteArray();
+        PanoramaxApi.setTransport(new PanoramaxTransport() {
+            @Override
+            public InputStream get(URI uri) throws IOException {
+                downloads.add(uri);
+                final CountDownLatch latch = blocked.get(uri.toString());
+                if (latch != null) {
+                    downloading.countDown();
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException(e.getMessage());
+                    }
+                }
+                return new ByteArrayInputStream(bytes);
+            }
+
+            @Override
+            public int head(URI uri) {
+                return 200;
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        PanoramaxApi.setTransport(null);
+    }
+
+    @Test
+    void testListenersReceiveUpgrade() throws Exception {
+        final PanoramaxImage image = image();
+        final PanoramaxJosmImage shown = new PanoramaxJosmImage(image);
+        final List<PanoramaxJosmImage> upgraded = new CopyOnWriteArrayList<>();
+        PanoramaxJosmImage.upgrade(API, image, -1, upgraded::add).get(10, TimeUnit.SECONDS);
+        assertEquals(1, upgraded.size());
+        // The viewer only reloads the picture for a new instance
+        assertNotSame(shown, upgraded.get(0));
+        assertEquals(shown, upgraded.get(0));
+        assertSame(image, upgraded.get(0).getImage());
+        assertNotNull(PanoramaxApi.getImage(API, image, -1, false));
+    }
+
+    @Test
+    void testStaleUpgradesDoNotNotify() throws Exception {
+        final PanoramaxImage running = image();
+        final PanoramaxImage queued = image();
+        final PanoramaxImage current = image();
+        final CountDownLatch release = new CountDownLatch(1);
+        this.blocked.put(hd(running).toString(), release);
+        final List<PanoramaxJosmImage> upgraded = new CopyOnWriteArrayList<>();
+
+        final Future<?> first = PanoramaxJosmImage.upgrade(API, running, -1, upgraded::add);
+        assertTrue(this.downloading.await(10, TimeUnit.SECONDS));
+        final Future<?> second = PanoramaxJosmImage.upgrade(API, queued, -1, upgraded::add);
+        final Future<?> third = PanoramaxJosmImage.upgrade(API, current, -1, upgraded::add);
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+        release.countDown();
+        third.get(10, TimeUnit.SECONDS);
+        assertThrows(CancellationException.class, first::get);
+
+        // The running download finishes, but only the current picture is announced
+        assertEquals(1, upgraded.size());
+        assertSame(current, upgraded.get(0).getImage());
+        assertTrue(this.downloads.contains(hd(running)));
+        assertFalse(this.downloads.contains(hd(queued)));
+    }
+
+    private static PanoramaxImage image() {
+        final String id = UUID.randomUUID().toString();
+        final PanoramaxLink hd = new PanoramaxLink(URI.create("https://panoramax.example/derivates/" + id + "/hd.jpg"),
+                "data", "image/jpeg", null);
+        return new PanoramaxImage(id, null, "Feature",
+                new PanoramaxLink[] {new PanoramaxLink(URI.create(API), "root", "application/json", null)},
+                Map.of(PanoramaxImage.Asset.hd.name(), hd), null, "c1", null, "1.0.0", 48.1, 2.1, null);
+    }
+
+    private static URI hd(PanoramaxImage image) {
+        return image.assets().get(PanoramaxImage.Asset.hd.name()).href();
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.openstreetmap.josm.plugins.panoramax.data.PanoramaxImage;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Test class for {@link PanoramaxPrefetcher}
+ */
+@BasicPreferences
+@Timeout(30)
+class PanoramaxPrefetcherTest {
+    /** The assets whose first download fails */
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+    private final List<String> downloads = new CopyOnWriteArrayList<>();
+    private String api;
+
+    @BeforeEach
+    void setUp() {
+        this.api = "https://" + UUID.randomUUID() + ".panoramax.example/api/";
+        PanoramaxApi.setTransport(new PanoramaxTransport() {
+            @Override
+            public InputStream get(URI uri) throws IOException {
+                if (uri.toString().startsWith(api)) {
+                    return new ByteArrayInputStream(
+                            PanoramaxDeserializerTest.page(0, 10).getBytes(StandardCharsets.UTF_8));
+                }
+                downloads.add(uri.getPath());
+                if (failing.remove(uri.getPath())) {
+                    throw new IOException("HTTP 503 for " + uri);
+                }
+                return new ByteArrayInputStream(new byte[] {1, 2, 3});
+            }
+
+            @Override
+            public int head(URI uri) {
+                return 200;
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        PanoramaxApi.setTransport(null);
+    }
+
+    @Test
+    void testFailedPrefetchIsRetried() throws InterruptedException {
+        // The prefetcher uses the collection of the picture
+        final PanoramaxSequence sequence = PanoramaxApi.getSequence(this.api, "c1");
+        assertNotNull(sequence);
+        final PanoramaxImage cursor = sequence.get("picture-0");
+        assertNotNull(cursor);
+        final String failed = "/derivates/picture-1/hd.jpg";
+        final String downloaded = "/derivates/picture-2/hd.jpg";
+        this.failing.add(failed);
+
+        // Moving to the same picture again retries the failed download once the first attempt has finished
+        while (this.downloads.stream().filter(failed::equals).count() < 2) {
+            PanoramaxPrefetcher.getInstance().moveTo(this.api, cursor, -1);
+            Thread.sleep(10);
+        }
+        // Downloaded pictures are not fetched again
+        assertEquals(1, this.downloads.stream().filter(downloaded::equals).count(), "downloads: " + this.downloads);
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.openstreetmap.josm.data.vector.VectorNode;
+
+/**
+ * Measure the time and the allocations of a frame of {@link PanoramaxLayer}, with a stroke made for every frame and
+ * with the stroke cached per scale. The frame draws the sequences and markers the same way the layer does, but
+ * with synthetic tile geometry, so it does not need a map view.
+ * <p>
+ * This is not run as a test. Run it with {@code java -cp <test classpath>
+ * org.openstreetmap.josm.plugins.panoramax.PanoramaxRenderBenchmark [markers] [frames]}.
+ */
+final class PanoramaxRenderBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final double SCALE = 0.5;
+
+    private final Path2D.Double sequences = new Path2D.Double();
+    private final double[] east;
+    private final double[] north;
+    private final double[] heading;
+    private final VectorNode[] nodes;
+    private final PanoramaxMarkerAtlas atlas = PanoramaxMarkerAtlas.get(null, 16, Color.ORANGE, Color.BLUE);
+    private final PanoramaxHitGrid hits = new PanoramaxHitGrid();
+    private final Graphics2D g = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB).createGraphics();
+
+    private PanoramaxRenderBenchmark(int markers) {
+        final Random random = new Random(42);
+        this.east = new double[markers];
+        this.north = new double[markers];
+        this.heading = new double[markers];
+        this.nodes = new VectorNode[markers];
+        for (int i = 0; i < markers; i++) {
+            // Sequences of 100 pictures, walking across the view
+            if (i % 100 == 0) {
+                this.east[i] = random.nextDouble() * WIDTH * SCALE;
+                this.north[i] = -random.nextDouble() * HEIGHT * SCALE;
+                this.sequences.moveTo(this.east[i], this.north[i]);
+            } else {
+                this.east[i] = this.east[i - 1] + random.nextDouble() * 4 - 2;
+                this.north[i] = this.north[i - 1] + random.nextDouble() * 4 - 2;
+                this.sequences.lineTo(this.east[i], this.north[i]);
+            }
+            this.heading[i] = random.nextDouble() * 360;
+            this.nodes[i] = new VectorNode("pictures");
+        }
+    }
+
+    private void frame(boolean cachedStroke) {
+        final AffineTransform transform = this.g.getTransform();
+        final Stroke stroke = this.g.getStroke();
+        this.g.setColor(Color.BLUE);
+        this.g.setStroke(cachedStroke ? PanoramaxLayer.getSequenceStroke(SCALE) : new BasicStroke((float) (2 * SCALE)));
+        this.g.transform(new AffineTransform(1 / SCALE, 0, 0, -1 / SCALE, 0, 0));
+        this.g.draw(this.sequences);
+        this.g.setTransform(transform);
+        this.g.setStroke(stroke);
+
+        this.hits.reset(WIDTH, HEIGHT);
+        for (int i = 0; i < this.nodes.length; i++) {
+            final int x = (int) (this.east[i] / SCALE);
+            final int y = (int) (-this.north[i] / SCALE);
+            this.hits.add(x, y, this.heading[i], this.nodes[i]);
+            this.atlas.draw(this.g, x, y, this.heading[i], PanoramaxMarkerAtlas.NORMAL);
+        }
+    }
+
+    private void run(String name, boolean cachedStroke, int frames) {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        // Warm up, so that the frames are compiled
+        for (int i = 0; i < frames; i++) {
+            frame(cachedStroke);
+        }
+        final long thread = Thread.currentThread().getId();
+        final long bytes = threads.getThreadAllocatedBytes(thread);
+        final long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            frame(cachedStroke);
+        }
+        final long time = System.nanoTime() - start;
+        final long allocated = threads.getThreadAllocatedBytes(thread) - bytes;
+        System.out.printf("%-16s %10.1f us/frame %10d bytes/frame%n", name, time / 1e3 / frames,
+                allocated / frames);
+    }
+
+    public static void main(String[] args) {
+        final int markers = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        final int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        final PanoramaxRenderBenchmark benchmark = new PanoramaxRenderBenchmark(markers);
+        for (int round = 0; round < 3; round++) {
+            benchmark.run("stroke per frame", false, frames);
+            benchmark.run("cached stroke", true, frames);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test class for {@link PooledHttpTransport}
+ */
+@BasicPreferences
+@Timeout(30)
+class PooledHttpTransportTest {
+    private static final int MAX_REQUESTS = 2;
+    private static final byte[] BODY = "picture".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private ExecutorService executor;
+    /** The client address of each connection the server has seen */
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger requests = new AtomicInteger();
+    private PooledHttpTransport transport;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/ok", exchange -> respond(exchange, 200, BODY));
+        this.server.createContext("/gzip", exchange -> {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(BODY);
+            }
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            respond(exchange, 200, bytes.toByteArray());
+        });
+        this.server.createContext("/missing", exchange -> respond(exchange, 404, BODY));
+        this.server.createContext("/error", exchange -> respond(exchange, 500, BODY));
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.executor);
+        this.server.start();
+        this.transport = new PooledHttpTransport(MAX_REQUESTS);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+        this.executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testConnectionReuse() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            try (InputStream body = this.transport.get(uri("/ok"))) {
+                assertEquals("picture", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(5, this.requests.get());
+        assertEquals(1, this.connections.size(), "connections: " + this.connections);
+    }
+
+    @Test
+    void testGzip() throws IOException {
+        try (InputStream body = this.transport.get(uri("/gzip"))) {
+            assertEquals("picture", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testPermitsPerHost() throws Exception {
+        final URI uri = uri("/ok");
+        final InputStream first = this.transport.get(uri);
+        final InputStream second = this.transport.get(uri);
+        assertEquals(0, this.transport.getAvailablePermits(uri));
+        // A third request must wait for one of the open responses
+        final Future<InputStream> third = this.executor.submit(() -> this.transport.get(uri));
+        assertThrows(TimeoutException.class, () -> third.get(500, TimeUnit.MILLISECONDS));
+        assertEquals(2, this.requests.get());
+
+        first.close();
+        third.get(10, TimeUnit.SECONDS).close();
+        second.close();
+        assertEquals(3, this.requests.get());
+        assertEquals(MAX_REQUESTS, this.transport.getAvailablePermits(uri));
+    }
+
+    @Test
+    void testPermitReleasedOnClose() throws IOException {
+        final URI uri = uri("/ok");
+        final InputStream body = this.transport.get(uri);
+        assertEquals(MAX_REQUESTS - 1, this.transport.getAvailablePermits(uri));
+        body.close();
+        assertEquals(MAX_REQUESTS, this.transport.getAvailablePermits(uri));
+        // Closing again must not give back a second permit
+        body.close();
+        assertEquals(MAX_REQUESTS, this.transport.getAvailablePermits(uri));
+
+        assertEquals(200, this.transport.head(uri));
+        assertEquals(MAX_REQUESTS, this.transport.getAvailablePermits(uri));
+    }
+
+    @Test
+    void testErrorResponses() {
+        for (String path : new String[] {"/missing", "/error"}) {
+            final URI uri = uri(path);
+            final IOException exception = assertThrows(IOException.class, () -> this.transport.get(uri));
+            assertEquals("HTTP " + ("/missing".equals(path) ? 404 : 500) + " for " + uri, exception.getMessage());
+            assertEquals(MAX_REQUESTS, this.transport.getAvailablePermits(uri));
+        }
+    }
+
+    @Test
+    void testPermitReleasedOnConnectionFailure() throws IOException {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+        final URI uri = URI.create("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ':' + port + "/ok");
+        assertThrows(IOException.class, () -> this.transport.get(uri));
+        assertEquals(MAX_REQUESTS, this.transport.getAvailablePermits(uri));
+    }
+
+    private URI uri(String path) {
+        final InetSocketAddress address = this.server.getAddress();
+        return URI.create("http://" + address.getAddress().getHostAddress() + ':' + address.getPort() + path);
+    }
+
+    private void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+        this.requests.incrementAndGet();
+        this.connections.add(exchange.getRemoteAddress());
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(code, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * SPDX-FileCopyrightText: Copyright (c) 2026 Taylor Smock
+ * SPDX-FileType: SOURCE
+ * SPDX-License-Identifier: AGPL-3.0-or-later WITH agpl-ai-training
+ */
+package org.openstreetmap.josm.plugins.panoramax.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for {@link PanoramaxCollection}
+ */
+class PanoramaxCollectionTest {
+    private static final int PICTURES = 100;
+
+    @Test
+    void testColumns() {
+        final PanoramaxImage[] images = images();
+        final PanoramaxCollection collection = new PanoramaxCollection(new PanoramaxLink[0], images);
+        assertEquals(PICTURES, collection.size());
+        for (int i = 0; i < PICTURES; i++) {
+            assertEquals(images[i].id(), collection.getId(i));
+            assertEquals(i, collection.indexOf(images[i].id()));
+            assertEquals(images[i].lat(), collection.getLat(i));
+            assertEquals(images[i].lon(), collection.getLon(i));
+            assertEquals((short) ((i * 7) % 360), collection.getHeading(i));
+            assertEquals(images[i].properties().timestamps().datetime(), collection.getTimestamp(i));
+            assertSamePicture(images[i], collection.get(i));
+        }
+        assertEquals(-1, collection.indexOf("missing"));
+    }
+
+    @Test
+    void testMissingHeadingAndTimestamp() {
+        final PanoramaxImage image = new PanoramaxImage("id", null, "Feature", null, null, null, "c1", null, null,
+                48.1, 2.1, null);
+        final PanoramaxCollection collection = new PanoramaxCollection(new PanoramaxLink[0], image);
+        assertEquals(PanoramaxCollection.NO_HEADING, collection.getHeading(0));
+        assertEquals(PanoramaxCollection.NO_TIMESTAMP, collection.getTimestamp(0));
+    }
+
+    /**
+     * Stepping through a page asks for the same pictures several times, so they should only be decoded once
+     */
+    @Test
+    void testRecentPicturesAreReused() {
+        final PanoramaxCollection collection = new PanoramaxCollection(new PanoramaxLink[0], images());
+        final PanoramaxImage first = collection.get(1);
+        assertSame(first, collection.get(1));
+        assertSame(collection.get(2), collection.get(2));
+        assertSame(first, collection.get(1));
+        // Another picture in the same slot replaces it
+        assertSamePicture(collection.get(9), collection.get(9));
+        assertNotSame(first, collection.get(1));
+        assertSamePicture(first, collection.get(1));
+    }
+
+    @Test
+    void testSerialization() throws IOException, ClassNotFoundException {
+        final PanoramaxImage[] images = images();
+        final PanoramaxCollection collection = new PanoramaxCollection(
+                new PanoramaxLink[] {link("https://panoramax.example/api/collections/c1/items?page=2", "next")},
+                images);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(collection);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            final PanoramaxCollection read = assertInstanceOf(PanoramaxCollection.class, in.readObject());
+            assertEquals(collection.getLink("next"), read.getLink("next"));
+            assertEquals(PICTURES, read.size());
+            for (int i = 0; i < PICTURES; i++) {
+                assertEquals(images[i].id(), read.getId(i));
+                assertEquals(collection.getHeading(i), read.getHeading(i));
+                assertEquals(collection.getTimestamp(i), read.getTimestamp(i));
+                assertSamePicture(images[i], read.get(i));
+            }
+        }
+    }
+
+    /**
+     * A page with a {@link PanoramaxImage} per picture retained about 3.7 KB per picture. Check that the columns stay
+     * well below that.
+     */
+    @Test
+    void testRetainedSize() {
+        final PanoramaxCodec.Columns columns = new PanoramaxCollection(new PanoramaxLink[0], images()).columns();
+        // Ids are indexes into the dictionary, so the id strings are counted with the dictionary
+        long size = arraySize(columns.dictionary().length, 4) + arraySize(columns.ids().length, 4);
+        for (String string : columns.dictionary()) {
+            size += stringSize(string);
+        }
+        size += arraySize(columns.lat().length, 8) + arraySize(columns.lon().length, 8);
+        size += arraySize(columns.heading().length, 2) + arraySize(columns.timestamps().length, 8);
+        size += arraySize(columns.data().length, 1) + arraySize(columns.offsets().length, 4);
+        assertTrue(size / PICTURES < 1024, "bytes per picture: " + size / PICTURES);
+    }
+
+    private static void assertSamePicture(PanoramaxImage expected, PanoramaxImage actual) {
+        assertEquals(expected.id(), actual.id());
+        assertEquals(expected.lat(), actual.lat());
+        assertEquals(expected.lon(), actual.lon());
+        assertEquals(expected.collection(), actual.collection());
+        assertEquals(expected.assets(), actual.assets());
+        assertEquals(expected.properties().license(), actual.properties().license());
+        assertEquals(expected.properties().view_azimuth(), actual.properties().view_azimuth());
+        assertEquals(expected.properties().datetime(), actual.properties().datetime());
+    }
+
+    private static PanoramaxImage[] images() {
+        final PanoramaxImage[] images = new PanoramaxImage[PICTURES];
+        for (int i = 0; i < PICTURES; i++) {
+            final String id = "0f6c1b7e-4a2d-4c55-9d1e-" + String.format("%012d", i);
+            final PanoramaxProperties properties = new PanoramaxProperties(null, "2023-06-02T00:00:00+00:00",
+                    "etalab-2.0", "2023-06-02T00:00:00+00:00", "2023-06-01T10:11:" + String.format("%02d", i % 60)
+                            + "+00:00", null, "c1", null, null, (i * 7) % 360, null, "ready", null, null,
+                    "IMG_" + i + ".jpg", 4_000_000 + i, null, null, i + 1, 2.5,
+                    new PanoramaxTimestamps(PanoramaxTimestamps.NONE, PanoramaxTimestamps.NONE,
+                            1_685_614_260_000L + (i % 60) * 1000L, PanoramaxTimestamps.NONE));
+            images[i] = new PanoramaxImage(id, null, "Feature",
+                    new PanoramaxLink[] {link("https://panoramax.example/api/", "root"),
+                        link("https://panoramax.example/api/collections/c1/items/" + id, "self")},
+                    Map.of("hd", link("https://panoramax.example/derivates/" + id + "/hd.jpg", "data"),
+                            "sd", link("https://panoramax.example/derivates/" + id + "/sd.jpg", "visual"),
+                            "thumb", link("https://panoramax.example/derivates/" + id + "/thumb.jpg", "thumbnail")),
+                    new PanoramaxProvider[] {new PanoramaxProvider("u1", "someone", "producer")}, "c1", properties,
+                    "1.0.0", 48.1 + i * 1e-4, 2.1 + i * 1e-4, null);
+        }
+        return images;
+    }
+
+    private static PanoramaxLink link(String href, String rel) {
+        return new PanoramaxLink(URI.create(href), rel, "application/json", null);
+    }
+
+    /** The size of a compact (Latin-1) string and its backing array on a 64 bit JVM with compressed oops */
+    private static long stringSize(String string) {
+        return 24 + arraySize(string.length(), 1);
+    }
+
+    private static long arraySize(int length, int elementSize) {
+        return (16 + (long) length * elementSize + 7) / 8 * 8;
+    }
+}